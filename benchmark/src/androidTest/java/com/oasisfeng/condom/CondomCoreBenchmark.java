@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Micro-benchmarks of the decision path in {@link CondomCore}, with fake procedures and query results in place of the
+ * downstream calls, so only the overhead of condom is measured. Both time and allocation count are reported.
+ *
+ * Created by agent on 2026/10/17.
+ */
+public class CondomCoreBenchmark {
+
+	@Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+	@Test public void proceedAllowed() {
+		final CondomCore condom = condom(new CondomOptions().setOutboundJudge(JUDGE));
+		final Intent intent = new Intent(ACTION).setPackage(ALLOWED_PACKAGE);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.proceed(OutboundType.START_SERVICE, intent, null, () -> null);
+	}
+
+	@Test public void proceedBlocked() {
+		final CondomCore condom = condom(new CondomOptions().setOutboundJudge(JUDGE));
+		final Intent intent = new Intent(ACTION).setPackage(DISALLOWED_PACKAGE);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.proceed(OutboundType.START_SERVICE, intent, null, () -> null);
+	}
+
+	@Test public void proceedWithLatencyRecorded() {
+		final CondomCore condom = condom(new CondomOptions().setOutboundJudge(JUDGE).recordLatency(true));
+		final Intent intent = new Intent(ACTION).setPackage(ALLOWED_PACKAGE);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.proceed(OutboundType.START_SERVICE, intent, null, () -> null);
+	}
+
+	@Test public void proceedQuery() {
+		final CondomCore condom = condom(new CondomOptions().setOutboundJudge(JUDGE));
+		final Intent intent = new Intent(ACTION);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) {
+			state.pauseTiming();
+			final List<ResolveInfo> candidates = new ArrayList<>(CANDIDATES);
+			state.resumeTiming();
+			condom.proceedQuery(OutboundType.QUERY_SERVICES, intent, () -> candidates, CondomCore.SERVICE_PACKAGE_GETTER);
+		}
+	}
+
+	@Test public void filterCandidates() {
+		final CondomCore condom = condom(new CondomOptions().setOutboundJudge(JUDGE));
+		final Intent intent = new Intent(ACTION);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.filterCandidates(OutboundType.QUERY_SERVICES, intent, CANDIDATES, TAG, false);
+	}
+
+	@Test public void adjustIntentFlags() {
+		final CondomCore condom = condom(new CondomOptions().preventBroadcastToBackgroundPackages(true));
+		final Intent intent = new Intent(ACTION);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) intent.setFlags(condom.adjustIntentFlags(OutboundType.BROADCAST, intent));
+	}
+
+	@Test public void logOutboundPass() {
+		final CondomCore condom = condom(new CondomOptions());
+		final Intent intent = new Intent(ACTION).setPackage(ALLOWED_PACKAGE);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.logIfOutboundPass(TAG, intent, ALLOWED_PACKAGE, CondomCore.CondomEvent.START_PASS);
+	}
+
+	@Test public void logOutboundPassAsync() {
+		final CondomCore condom = condom(new CondomOptions().writeEventLogAsync(1024, true));
+		final Intent intent = new Intent(ACTION).setPackage(ALLOWED_PACKAGE);
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.logIfOutboundPass(TAG, intent, ALLOWED_PACKAGE, CondomCore.CondomEvent.START_PASS);
+	}
+
+	@Test public void logConcernSampled() {
+		final CondomCore condom = condom(new CondomOptions().sampleConcernStacks(1, 0));
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) condom.logConcern(TAG, "Context.getBaseContext");
+	}
+
+	/** Pass-through call via the proxy of system service in CondomProcess, to be compared with {@link #callDirectly()}. */
+	@Test public void callViaProcessProxy() {
+		final FakeService proxy = (FakeService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { FakeService.class },
+				new CondomProcess.CondomProcessPackageManager(condom(new CondomOptions()), FakeService.class, FAKE_SERVICE));
+		assertEquals(FAKE_SERVICE.getFlags(0x1234), proxy.getFlags(0x1234));
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) proxy.getFlags(0x1234);
+	}
+
+	@Test public void callDirectly() {
+		final BenchmarkState state = mBenchmarkRule.getState();
+		while (state.keepRunning()) FAKE_SERVICE.getFlags(0x1234);
+	}
+
+	interface FakeService { int getFlags(int mask); }
+
+	private static final FakeService FAKE_SERVICE = new FakeService() { @Override public int getFlags(final int mask) { return mask & 0xFF; } };
+
+	private static CondomCore condom(final CondomOptions options) {
+		return new CondomCore(new ContextWrapper(InstrumentationRegistry.getInstrumentation().getTargetContext()), options, TAG);
+	}
+
+	private static ResolveInfo buildResolveInfo(final String pkg, final int uid) {
+		final ResolveInfo r = new ResolveInfo();
+		r.serviceInfo = new ServiceInfo();
+		r.serviceInfo.packageName = pkg;
+		r.serviceInfo.applicationInfo = new ApplicationInfo();
+		r.serviceInfo.applicationInfo.packageName = pkg;
+		r.serviceInfo.applicationInfo.uid = uid;
+		return r;
+	}
+
+	private static final String TAG = "Benchmark";
+	private static final String ACTION = "com.example.BENCHMARK";
+	private static final String ALLOWED_PACKAGE = "x.y.z";
+	private static final String DISALLOWED_PACKAGE = "a.b.c";
+	private static final OutboundJudge JUDGE = (type, intent, target_pkg) -> ! target_pkg.startsWith("a.");
+	private static final List<ResolveInfo> CANDIDATES = new ArrayList<>();
+	static {
+		for (int i = 0; i < 8; i ++) CANDIDATES.add(buildResolveInfo((i % 2 == 0 ? "a.b.c" : "x.y.z") + i, 10000 + i));
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Test cases for {@link BackgroundThread}
+ *
+ * Created by agent on 2026/10/17.
+ */
+public class BackgroundThreadTest {
+
+	@Test public void testBackgroundThread() throws InterruptedException {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+		BackgroundThread.postDelayed(() -> executed.add("delayed"), 100);
+		BackgroundThread.post(() -> {
+			assertEquals("Condom", Thread.currentThread().getName());
+			assertEquals(android.os.Process.THREAD_PRIORITY_BACKGROUND, android.os.Process.getThreadPriority(android.os.Process.myTid()));
+			executed.add("immediate");
+		});
+		waitForBackgroundThread(200);
+		assertEquals(Arrays.asList("immediate", "delayed"), executed);
+	}
+
+	/** Wait until the work posted to {@link BackgroundThread} (with delay not beyond the specified) is done. */
+	static void waitForBackgroundThread(final long delay_millis) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		BackgroundThread.postDelayed(latch::countDown, delay_millis);
+		assertTrue(latch.await(delay_millis + 3_000, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Intent;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Test cases for {@link ConcernSampler}
+ *
+ * Created by agent on 2026/10/17.
+ */
+public class ConcernSamplerTest {
+
+	@Test public void testSamplingPerCallSite() {
+		final List<String> suppressed = new ArrayList<>();
+		final EventLogWriter writer = new EventLogWriter(ApplicationProvider.getApplicationContext().getPackageName(), false, 0, false) {
+			@Override void write(final CondomCore.CondomEvent event, final String tag, final String arg, final @Nullable String extra, final @Nullable Intent intent) {
+				assertEquals(CondomCore.CondomEvent.CONCERN_SUPPRESSED, event);
+				suppressed.add(tag + "/" + arg + ":" + extra);
+			}
+		};
+		final ConcernSampler sampler = new ConcernSampler(writer, 2, 3);
+		final boolean[] expected = { true, true, false, false, true, false, false, true };	// First 2, then one in every 3
+		for (final boolean sampled : expected) assertEquals(sampled, sampler.sample(TAG, "A", CALLER));
+		assertTrue(sampler.sample(TAG, "A", "Other.caller:1"));		// Counted separately per caller,
+		assertTrue(sampler.sample(TAG, "B", CALLER));				// per label
+		assertTrue(sampler.sample("Other", "A", CALLER));			// and per tag
+
+		sampler.flush();
+		assertEquals(Collections.singletonList(TAG + "/A:" + CALLER + " x4"), suppressed);
+		suppressed.clear();
+		sampler.flush();		// Nothing suppressed since last flush
+		assertTrue(suppressed.isEmpty());
+	}
+
+	private static final String TAG = "Test";
+	private static final String CALLER = "Caller.method:42";
+}
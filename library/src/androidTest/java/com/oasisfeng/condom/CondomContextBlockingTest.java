@@ -22,23 +22,30 @@ import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.ComponentInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.provider.Settings;
 import androidx.annotation.CallSuper;
@@ -51,7 +58,12 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -67,7 +79,9 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 @ParametersAreNonnullByDefault
 public class CondomContextBlockingTest {
@@ -208,6 +222,143 @@ public class CondomContextBlockingTest {
 		@Override public int update(@NonNull final Uri uri, @Nullable final ContentValues contentValues, @Nullable final String s, @Nullable final String[] strings) { return 0; }
 	}
 
+	private static final String ROWS_AUTHORITY = "com.oasisfeng.condom.test.rows";
+	private static final Uri ROWS_CONTENT_URI = Uri.parse("content://" + ROWS_AUTHORITY + "/");
+
+	/** Always returns 10 rows */
+	public static class RowsProvider extends TestProvider {
+		@Override public Cursor query(@NonNull final Uri uri, @Nullable final String[] strings, @Nullable final String s, @Nullable final String[] strings1, @Nullable final String s1) {
+			final MatrixCursor cursor = new MatrixCursor(new String[] { "_id" });
+			for (int i = 0; i < 10; i ++) cursor.addRow(new Object[] { i });
+			return cursor;
+		}
+	}
+
+	@Test public void testLimitContentQueries() {
+		final String tag = TAG + ".Query";
+		final CondomContext condom = CondomContext.wrap(ApplicationProvider.getApplicationContext(), tag,
+				new CondomOptions().limitContentQueries(3, new String[] { "_id" }));
+		final ContentResolver resolver = condom.getContentResolver();
+		try (final Cursor cursor = requireNonNull(resolver.query(ROWS_CONTENT_URI, new String[] { "_id" }, null, null, null))) {
+			assertEquals(3, cursor.getCount());
+			int num_rows = 0;
+			while (cursor.moveToNext()) num_rows ++;
+			assertEquals(3, num_rows);
+			assertTrue(cursor.isAfterLast());
+		}
+		assertNull(resolver.query(ROWS_CONTENT_URI, null, null, null, null));	// Projection not allowed
+
+		final CondomStats.QueryStats stats = requireNonNull(CondomStats.snapshot().getQueryStats(tag, ROWS_AUTHORITY));
+		assertEquals(1, stats.getQueries());
+		assertEquals(10, stats.getRows());
+		assertEquals(2, stats.getViolations());
+	}
+
+	@Test public void testCachePackageInfo() throws PackageManager.NameNotFoundException {
+		final RecordingPackageManagerContext context = new RecordingPackageManagerContext();
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().cachePackageInfo(16));
+		final PackageManager pm = condom.getPackageManager();
+		final String pkg = context.getPackageName();
+
+		final PackageInfo info = pm.getPackageInfo(pkg, 0);
+		final String version_name = info.versionName;
+		info.versionName = "modified";
+		assertEquals(version_name, pm.getPackageInfo(pkg, 0).versionName);	// Defensive copy
+		assertEquals(1, context.takeFlags(GET_PACKAGE_INFO).size());
+		pm.getPackageInfo(pkg, PackageManager.GET_PERMISSIONS);		// Different flags
+		assertEquals(Collections.singletonList(PackageManager.GET_PERMISSIONS), context.takeFlags(GET_PACKAGE_INFO));
+	}
+
+	@Test public void testPrefetchOnProbeStorm() throws PackageManager.NameNotFoundException {
+		final RecordingPackageManagerContext context = new RecordingPackageManagerContext();
+		final String tag = "ProbeStorm";
+		final CondomContext condom = CondomContext.wrap(context, tag, new CondomOptions().prefetchOnProbeStorm(5, 10_000));
+		final PackageManager pm = condom.getPackageManager();
+		final CondomStats before = CondomStats.snapshot();		// Statistics are process-wide, thus accumulated across test runs.
+
+		for (int i = 0; i < 20; i ++) try {
+			pm.getPackageInfo("com.example.missing" + i, 0);
+			fail("Package should be missing");
+		} catch (final PackageManager.NameNotFoundException ignored) {}
+		assertEquals(4, context.takeFlags(GET_PACKAGE_INFO).size());		// Answered locally since the 5th probe (storm detected)
+		assertEquals(context.getPackageName(), pm.getPackageInfo(context.getPackageName(), 0).packageName);	// Installed package still goes through
+		assertEquals(1, context.takeFlags(GET_PACKAGE_INFO).size());
+		try {
+			pm.getPackageInfo("com.example.missing", 0x00008000/* MATCH_DISABLED_UNTIL_USED_COMPONENTS */);	// Not answered by snapshot
+			fail("Package should be missing");
+		} catch (final PackageManager.NameNotFoundException ignored) {}
+		assertEquals(1, context.takeFlags(GET_PACKAGE_INFO).size());
+		final CondomStats stats = CondomStats.snapshot();
+		assertEquals(22, stats.getPackageProbes(tag) - before.getPackageProbes(tag));
+		assertEquals(16, stats.getPackageProbesAnsweredLocally(tag) - before.getPackageProbesAnsweredLocally(tag));
+		assertEquals(1, stats.getPackageProbeStorms(tag) - before.getPackageProbeStorms(tag));
+	}
+
+	@SuppressWarnings("deprecation") @Test public void testDowngradePackageQueryFlags() throws PackageManager.NameNotFoundException {
+		final RecordingPackageManagerContext context = new RecordingPackageManagerContext();
+		final String tag = "Downgrade", pkg = context.getPackageName();
+		final CondomContext condom = CondomContext.wrap(context, tag, new CondomOptions().downgradePackageQueryFlags(PackageManager.GET_SIGNATURES));
+		final PackageManager pm = condom.getPackageManager();
+		final CondomStats before = CondomStats.snapshot();		// Statistics are process-wide, thus accumulated across test runs.
+
+		assertNull(pm.getPackageInfo(pkg, PackageManager.GET_SIGNATURES | PackageManager.GET_META_DATA).signatures);
+		assertEquals(Collections.singletonList(PackageManager.GET_META_DATA), context.takeFlags(GET_PACKAGE_INFO));
+		pm.getPackageInfo(pkg, PackageManager.GET_META_DATA);		// Nothing to strip
+		assertEquals(Collections.singletonList(PackageManager.GET_META_DATA), context.takeFlags(GET_PACKAGE_INFO));
+		final CondomStats stats = CondomStats.snapshot();
+		assertEquals(1, stats.getPackageQueryDowngrades(tag) - before.getPackageQueryDowngrades(tag));
+		assertEquals(0, stats.getBytesSavedByDowngrade(tag) - before.getBytesSavedByDowngrade(tag));		// Not sampled by default
+
+		final String sampled_tag = "DowngradeSampled";
+		final CondomContext sampled = CondomContext.wrap(context, sampled_tag, new CondomOptions().downgradePackageQueryFlags(PackageManager.GET_SIGNATURES)
+				.sampleDowngradeSavings(true));
+		assertNull(sampled.getPackageManager().getPackageInfo(pkg, PackageManager.GET_SIGNATURES).signatures);
+		assertTrue(CondomStats.snapshot().getBytesSavedByDowngrade(sampled_tag) > stats.getBytesSavedByDowngrade(sampled_tag));
+
+		final CondomContext exempted = CondomContext.wrap(context, tag, new CondomOptions().downgradePackageQueryFlags(PackageManager.GET_SIGNATURES)
+				.downgradePackageQueryFlags(pkg, 0));
+		assertNotNull(exempted.getPackageManager().getPackageInfo(pkg, PackageManager.GET_SIGNATURES).signatures);
+	}
+
+	@Test public void testThrottleInstalledPackages() {
+		final RecordingPackageManagerContext context = new RecordingPackageManagerContext();
+		final String pkg = context.getPackageName();
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().throttleInstalledPackages(60_000, PackageManager.GET_META_DATA)
+				.filterInstalledPackages(true).setOutboundJudge((type, intent, target_pkg) -> ! pkg.equals(target_pkg)));
+		final PackageManager pm = condom.getPackageManager();
+
+		for (int i = 0; i < 2; i ++) {
+			final List<PackageInfo> packages = pm.getInstalledPackages(PackageManager.GET_META_DATA | PackageManager.GET_GIDS);
+			assertFalse(packages.isEmpty());
+			for (final PackageInfo info : packages) {
+				assertFalse(pkg.equals(info.packageName));		// Filtered by outbound judge
+				assertFalse("modified".equals(info.packageName));		// Defensive copy
+				assertNull(info.applicationInfo.metaData);		// Stripped
+			}
+			packages.get(0).packageName = "modified";
+			packages.clear();		// Should not affect the snapshot
+		}
+		assertEquals(Collections.singletonList(PackageManager.GET_GIDS), context.takeFlags(GET_INSTALLED_PACKAGES));	// Served from snapshot for the second time
+	}
+
+	@Test public void testCacheQueryResults() {
+		final TestContext context = new TestContext();
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().cacheQueryResults(true)
+				.setOutboundJudge((type, intent, target_pkg) -> ! DISALLOWED_PACKAGE.equals(target_pkg)));
+		final PackageManager pm = condom.getPackageManager();
+
+		for (int i = 0; i < 2; i ++) {
+			final List<ResolveInfo> receivers = pm.queryBroadcastReceivers(intent(), 0);
+			if (i == 0) context.assertBaseCalled(); else context.assertBaseNotCalled();
+			assertEquals(1, receivers.size());		// Still filtered by outbound judge if cached
+			assertEquals(ALLOWED_PACKAGE, receivers.get(0).activityInfo.packageName);
+		}
+		pm.queryBroadcastReceivers(intent(), PackageManager.GET_META_DATA);		// Different flags
+		context.assertBaseCalled();
+		pm.queryBroadcastReceivers(new Intent("com.example.OTHER"), 0);			// Different filter
+		context.assertBaseCalled();
+	}
+
 	@Test public void testOutboundJudge() {
 		final TestContext context = new TestContext();
 		final CondomOptions options = new CondomOptions().setOutboundJudge((type, intent, target_pkg) -> {
@@ -261,6 +412,428 @@ public class CondomContextBlockingTest {
 		assertOutboundJudgeCalled(0);
 	}
 
+	@Test public void testOutboundJudgeCache() {
+		final TestContext context = new TestContext();
+		final OutboundJudgeCache cache = new OutboundJudgeCache(16, 60_000, false);
+		final CondomOptions options = new CondomOptions().setOutboundJudgeCache(cache).setOutboundJudge((type, intent, target_pkg) -> {
+			mNumOutboundJudgeCalled.incrementAndGet();
+			return ! DISALLOWED_PACKAGE.equals(target_pkg);
+		});
+		final CondomContext condom = CondomContext.wrap(context, TAG, options);
+
+		assertNull(condom.startService(intent().setPackage(DISALLOWED_PACKAGE)));
+		context.assertBaseNotCalled();
+		assertOutboundJudgeCalled(1);
+		assertNull(condom.startService(intent().setComponent(DISALLOWED_COMPONENT)));
+		context.assertBaseNotCalled();
+		assertOutboundJudgeCalled(0);		// Verdict from cache
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+		context.assertBaseCalled();
+		assertOutboundJudgeCalled(1);		// Different target package
+
+		cache.invalidate(DISALLOWED_PACKAGE);
+		assertNull(condom.startService(intent().setPackage(DISALLOWED_PACKAGE)));
+		assertOutboundJudgeCalled(1);
+		cache.invalidate();
+		condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+		context.assertBaseCalled();
+		assertOutboundJudgeCalled(1);
+	}
+
+	@Test public void testOutboundPolicy() {
+		final TestContext context = new TestContext();
+		final OutboundPolicy policy = new OutboundPolicy().denyPackagePrefix("a.b").allowComponent(new ComponentName(DISALLOWED_PACKAGE, "B"))
+				.denyAction("com.example.DENIED", OutboundType.BROADCAST);
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().setOutboundPolicy(policy));
+		policy.allowPackage(DISALLOWED_PACKAGE);	// Should take no effect after compiled.
+
+		for (final Context context2test : new Context[] {condom, condom.getApplicationContext()}) {
+			with(DISALLOWED_INTENTS, allBroadcastApis(context2test), context::assertBaseNotCalled);
+			with(ALLOWED_INTENTS, allBroadcastApis(context2test), context.EXPECT_BASE_CALLED);
+			with(new Intent[] { intent().setComponent(new ComponentName(DISALLOWED_PACKAGE, "B")) }, allServiceApis(context2test), context.EXPECT_BASE_CALLED);
+			with(new Intent[] { new Intent("com.example.DENIED").setPackage(ALLOWED_PACKAGE) }, allServiceApis(context2test), context.EXPECT_BASE_CALLED);
+		}
+		condom.sendBroadcast(new Intent("com.example.DENIED").setPackage(ALLOWED_PACKAGE));
+		context.assertBaseNotCalled();
+
+		assertEquals(1, condom.getPackageManager().queryIntentServices(intent(), 0).size());
+		context.assertBaseCalled();
+	}
+
+	@Test public void testRateLimit() {
+		final TestContext context = new TestContext();
+		final CondomOptions options = new CondomOptions().limitOutboundRate(2, 60_000, OutboundType.START_SERVICE);
+		final CondomContext condom = CondomContext.wrap(context, TAG, options), dry_condom = CondomContext.wrap(context, TAG, options.setDryRun(true));
+
+		for (int i = 0; i < 2; i ++) {
+			condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+			context.assertBaseCalled();
+		}
+		assertNull(condom.startService(intent().setPackage(ALLOWED_PACKAGE)));
+		context.assertBaseNotCalled();
+		condom.startService(intent().setComponent(new ComponentName(DISALLOWED_PACKAGE, "A")));	// Buckets are per target package
+		context.assertBaseCalled();
+		condom.sendBroadcast(intent().setPackage(ALLOWED_PACKAGE));		// Only START_SERVICE is limited
+		context.assertBaseCalled();
+		condom.startService(intent().setPackage(context.getPackageName()));	// Self-targeting is never throttled
+		context.assertBaseCalled();
+
+		for (int i = 0; i < 3; i ++) {
+			dry_condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+			context.assertBaseCalled();
+		}
+	}
+
+	@Test public void testCoalesceStartService() {
+		final AtomicInteger num_started = new AtomicInteger();
+		final Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+			@Override public ComponentName startService(final Intent service) { num_started.incrementAndGet(); return service.getComponent(); }
+		};
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().coalesceStartService(60_000));
+
+		assertEquals(ALLOWED_COMPONENT, condom.startService(intent().setComponent(ALLOWED_COMPONENT)));
+		assertEquals(ALLOWED_COMPONENT, condom.startService(intent().setComponent(ALLOWED_COMPONENT).putExtra("x", 1)));	// Extras are not compared
+		assertEquals(1, num_started.getAndSet(0));
+		condom.startService(new Intent("com.example.OTHER").setComponent(ALLOWED_COMPONENT));
+		assertEquals(1, num_started.getAndSet(0));
+		final ComponentName self = new ComponentName(context.getPackageName(), "A");
+		condom.startService(intent().setComponent(self));
+		condom.startService(intent().setComponent(self));		// Never coalesced for self package
+		assertEquals(2, num_started.getAndSet(0));
+	}
+
+	@Test public void testPoolServiceBindings() {
+		final List<ServiceConnection> bound = new ArrayList<>(); final AtomicInteger num_unbound = new AtomicInteger();
+		final Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+			@Override public Context getApplicationContext() { return this; }
+			@Override public boolean bindService(final Intent service, final ServiceConnection conn, final int flags) {
+				if (DENIED_COMPONENT.equals(service.getComponent())) throw new SecurityException();
+				bound.add(conn); return true;
+			}
+			@Override public void unbindService(final ServiceConnection conn) { assertTrue(bound.remove(conn)); num_unbound.incrementAndGet(); }
+		};
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().poolServiceBindings(true));
+		final List<ComponentName> connected = new ArrayList<>();
+		final ServiceConnection conn1 = new ServiceConnection() {
+			@Override public void onServiceConnected(final ComponentName name, final IBinder service) { connected.add(name); }
+			@Override public void onServiceDisconnected(final ComponentName name) {}
+		}, conn2 = new ServiceConnection() {
+			@Override public void onServiceConnected(final ComponentName name, final IBinder service) { connected.add(name); }
+			@Override public void onServiceDisconnected(final ComponentName name) {}
+		};
+
+		assertTrue(condom.bindService(intent().setComponent(ALLOWED_COMPONENT), conn1, Context.BIND_AUTO_CREATE));
+		assertTrue(condom.bindService(intent().setComponent(ALLOWED_COMPONENT), conn2, Context.BIND_AUTO_CREATE));
+		assertTrue(condom.bindService(intent().setComponent(ALLOWED_COMPONENT), conn2, Context.BIND_AUTO_CREATE));	// Duplicate, no-op
+		assertEquals(1, bound.size());		// Multiplexed onto one real binding
+		bound.get(0).onServiceConnected(ALLOWED_COMPONENT, null);
+		assertEquals(Arrays.asList(ALLOWED_COMPONENT, ALLOWED_COMPONENT), connected);
+		assertTrue(condom.bindService(intent().setComponent(ALLOWED_COMPONENT), SERVICE_CONNECTION, 0));	// Different flags
+		assertEquals(2, bound.size());
+
+		condom.unbindService(conn1);
+		assertEquals(0, num_unbound.get());
+		condom.unbindService(conn2);
+		assertEquals(1, num_unbound.get());		// Unbound after the last one
+		condom.unbindService(SERVICE_CONNECTION);
+		assertEquals(2, num_unbound.get());
+
+		final ComponentName another = new ComponentName(ALLOWED_PACKAGE, "B");
+		assertTrue(condom.bindService(intent().setComponent(ALLOWED_COMPONENT), conn1, Context.BIND_AUTO_CREATE));
+		assertTrue(condom.bindService(intent().setComponent(another), conn1, Context.BIND_AUTO_CREATE));		// One connection to two services
+		assertEquals(2, bound.size());
+		condom.unbindService(conn1);		// Unbound from both, as the real unbinding does.
+		assertTrue(bound.isEmpty());
+		assertEquals(4, num_unbound.get());
+
+		for (int i = 0; i < 2; i ++) try {		// The failed binding must not be left in pool for later ones to join.
+			condom.bindService(intent().setComponent(DENIED_COMPONENT), conn1, Context.BIND_AUTO_CREATE);
+			fail("SecurityException expected");
+		} catch (final SecurityException ignored) {}
+	}
+
+	@Test public void testPoolServiceBindingsJoinedDuringBinding() throws InterruptedException {
+		final List<ServiceConnection> bound = new ArrayList<>();
+		final CountDownLatch binding = new CountDownLatch(1), failing = new CountDownLatch(1);
+		final Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+			@Override public Context getApplicationContext() { return this; }
+			@Override public boolean bindService(final Intent service, final ServiceConnection conn, final int flags) {
+				if (binding.getCount() > 0) {		// The first real binding fails after a while.
+					binding.countDown();
+					try { failing.await(); } catch (final InterruptedException e) { throw new RuntimeException(e); }
+					return false;
+				}
+				bound.add(conn); return true;
+			}
+			@Override public void unbindService(final ServiceConnection conn) { assertTrue(bound.remove(conn)); }
+		};
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().poolServiceBindings(true));
+		final ServiceConnection conn = new ServiceConnection() {
+			@Override public void onServiceConnected(final ComponentName name, final IBinder service) {}
+			@Override public void onServiceDisconnected(final ComponentName name) {}
+		};
+		final boolean[] results = new boolean[2];
+		final Thread initiator = new Thread(() -> results[0] = condom.bindService(intent().setComponent(ALLOWED_COMPONENT), SERVICE_CONNECTION, Context.BIND_AUTO_CREATE));
+		initiator.start();
+		assertTrue(binding.await(1, TimeUnit.SECONDS));
+		final Thread joiner = new Thread(() -> results[1] = condom.bindService(intent().setComponent(ALLOWED_COMPONENT), conn, Context.BIND_AUTO_CREATE));
+		joiner.start();
+		while (joiner.getState() != Thread.State.WAITING) Thread.sleep(1);		// Waiting for the outcome of binding in progress
+		failing.countDown();
+		initiator.join(); joiner.join();
+
+		assertFalse(results[0]);
+		assertTrue(results[1]);			// Not failed along with the initiator, but bound on its own.
+		assertEquals(1, bound.size());
+		condom.unbindService(conn);		// Handled by the pool, instead of falling through to the real unbinding.
+		assertTrue(bound.isEmpty());
+	}
+
+	@Test public void testMultiplexReceivers() {
+		final List<BroadcastReceiver> registered = new ArrayList<>();
+		final Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+			@Override public Context getApplicationContext() { return this; }
+			@Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter) { return null; }
+			@Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter, final String permission, final Handler scheduler) {
+				registered.add(receiver); return null;
+			}
+			@Override public void unregisterReceiver(final BroadcastReceiver receiver) { assertTrue(registered.remove(receiver)); }
+		};
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().multiplexReceivers(true));
+		final AtomicInteger num_received = new AtomicInteger();
+		final BroadcastReceiver receiver1 = new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent i) { num_received.incrementAndGet(); }},
+				receiver2 = new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent i) { num_received.incrementAndGet(); }};
+		final IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+		filter.addAction(Intent.ACTION_SCREEN_OFF);
+		final IntentFilter reordered = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+		reordered.addAction(Intent.ACTION_SCREEN_ON);
+
+		condom.registerReceiver(receiver1, filter);
+		condom.registerReceiver(receiver2, reordered);
+		assertEquals(1, registered.size());		// Multiplexed onto one real registration
+		registered.get(0).onReceive(context, new Intent(Intent.ACTION_SCREEN_ON));
+		assertEquals(2, num_received.getAndSet(0));
+		final IntentFilter with_data = new IntentFilter(Intent.ACTION_SCREEN_ON);
+		with_data.addDataScheme("package");
+		final BroadcastReceiver receiver3 = new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent i) {}};
+		condom.registerReceiver(receiver3, with_data);	// Not multiplexed
+		assertEquals(2, registered.size());
+		condom.unregisterReceiver(receiver3);
+		condom.unregisterReceiver(receiver1);
+		assertEquals(1, registered.size());
+		condom.unregisterReceiver(receiver2);		// The last one
+		assertEquals(0, registered.size());
+
+		final BroadcastReceiver throwing = new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent i) {
+			throw new IllegalStateException();
+		}};
+		condom.registerReceiver(throwing, filter);
+		condom.registerReceiver(receiver1, filter);
+		condom.registerReceiver(receiver1, filter);		// Identical registration takes no effect
+		condom.registerReceiver(receiver1, new IntentFilter(Intent.ACTION_BATTERY_LOW));
+		assertEquals(2, registered.size());
+		try {
+			registered.get(0).onReceive(context, new Intent(Intent.ACTION_SCREEN_ON));
+			fail("Exception should be rethrown");
+		} catch (final IllegalStateException ignored) {}
+		assertEquals(1, num_received.getAndSet(0));		// Still delivered to the rest
+		condom.unregisterReceiver(throwing);
+		condom.unregisterReceiver(receiver1);		// From both registrations
+		assertEquals(0, registered.size());
+
+		condom.registerReceiver(receiver1, filter);
+		condom.registerReceiver(receiver1, with_data);		// Also registered directly
+		assertEquals(2, registered.size());
+		condom.unregisterReceiver(receiver1);		// From both the multiplexer and the direct registration
+		assertEquals(0, registered.size());
+	}
+
+	@Test public void testDispatchCallbacksInBackground() throws InterruptedException {
+		final Handler[] schedulers = new Handler[1];
+		final Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+			@Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter, final String permission, final Handler scheduler) {
+				schedulers[0] = scheduler; return null;
+			}
+		};
+		final String tag = TAG + ".Callback";
+		final CondomContext condom = CondomContext.wrap(context, tag, new CondomOptions().dispatchCallbacksInBackground(true));
+		condom.registerReceiver(new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent i) {}}, new IntentFilter(Intent.ACTION_SCREEN_ON));
+		final Handler scheduler = requireNonNull(schedulers[0]);
+		assertFalse(scheduler.getLooper() == Looper.getMainLooper());
+
+		final CountDownLatch latch = new CountDownLatch(3);
+		for (int i = 0; i < 3; i ++) scheduler.post(latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		final CountDownLatch drained = new CountDownLatch(1);
+		scheduler.post(drained::countDown);
+		assertTrue(drained.await(5, TimeUnit.SECONDS));
+		final CondomStats stats = CondomStats.snapshot();
+		assertTrue(stats.getMaxCallbackQueueDepth(tag) >= 1);
+		assertTrue(requireNonNull(stats.getCallbackLatency(tag, CondomStats.CallbackLatency.EXECUTION)).getTotalCount() >= 3);
+	}
+
+	@Test public void testCoalesceNotifyChange() throws InterruptedException {
+		final Context context = ApplicationProvider.getApplicationContext();
+		final String tag = TAG + ".Notify";
+		final CondomContext condom = CondomContext.wrap(context, tag, new CondomOptions().coalesceNotifyChange(100));
+		final AtomicInteger num_changes = new AtomicInteger(); final CountDownLatch latch = new CountDownLatch(1);
+		final ContentObserver observer = new ContentObserver(null) { @Override public void onChange(final boolean self_change) {
+			num_changes.incrementAndGet(); latch.countDown();
+		}};
+		context.getContentResolver().registerContentObserver(TEST_CONTENT_URI, true, observer);
+		try {
+			final long merged = CondomStats.snapshot().getMergedNotifications(tag);
+			for (int i = 0; i < 3; i ++) condom.getContentResolver().notifyChange(TEST_CONTENT_URI, null);
+			assertEquals(2, CondomStats.snapshot().getMergedNotifications(tag) - merged);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			Thread.sleep(200);
+			assertEquals(1, num_changes.get());
+		} finally {
+			context.getContentResolver().unregisterContentObserver(observer);
+		}
+	}
+
+	@Test public void testCoalesceNotifyChangePerLooper() throws InterruptedException {
+		final Context context = ApplicationProvider.getApplicationContext();
+		final String tag = TAG + ".NotifyPerLooper";
+		final ContentResolver resolver = CondomContext.wrap(context, tag, new CondomOptions().coalesceNotifyChange(0)).getContentResolver();
+		final CountDownLatch changed = new CountDownLatch(2);
+		final ContentObserver observer = new ContentObserver(null) { @Override public void onChange(final boolean self_change) { changed.countDown(); }};
+		context.getContentResolver().registerContentObserver(TEST_CONTENT_URI, true, observer);
+		final HandlerThread thread1 = new HandlerThread("Looper1"), thread2 = new HandlerThread("Looper2");
+		thread1.start(); thread2.start();
+		try {
+			final long merged = CondomStats.snapshot().getMergedNotifications(tag);
+			final CountDownLatch pending1 = new CountDownLatch(1), notified2 = new CountDownLatch(1);
+			new Handler(thread1.getLooper()).post(() -> {		// Keep the notification pending in looper 1 while notifying in looper 2.
+				resolver.notifyChange(TEST_CONTENT_URI, null);
+				pending1.countDown();
+				try { notified2.await(); } catch (final InterruptedException ignored) {}
+				resolver.notifyChange(TEST_CONTENT_URI, null);
+			});
+			new Handler(thread2.getLooper()).post(() -> {
+				try { pending1.await(); } catch (final InterruptedException ignored) {}
+				resolver.notifyChange(TEST_CONTENT_URI, null);
+				resolver.notifyChange(TEST_CONTENT_URI, null);
+				notified2.countDown();
+			});
+			assertTrue(changed.await(5, TimeUnit.SECONDS));		// Emitted in each looper
+			assertEquals(2, CondomStats.snapshot().getMergedNotifications(tag) - merged);	// Only merged within the same looper
+		} finally {
+			thread1.quit(); thread2.quit();
+			context.getContentResolver().unregisterContentObserver(observer);
+		}
+	}
+
+	@Test public void testProviderResolutionCache() {
+		final RecordingPackageManagerContext context = new RecordingPackageManagerContext();
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		Assume.assumeTrue(generation != PackageChangeMonitor.UNTRACKED);
+		final ProviderResolutionCache cache = new ProviderResolutionCache();
+
+		final ProviderInfo provider = cache.resolve(context, Settings.AUTHORITY, 0);
+		assertNotNull(provider);
+		assertSame(provider, cache.resolve(context, Settings.AUTHORITY, 0));
+		assertEquals(1, context.takeFlags(RESOLVE_CONTENT_PROVIDER).size());
+		cache.resolve(context, Settings.AUTHORITY, PackageManager.GET_META_DATA);		// Different flags
+		assertEquals(Collections.singletonList(PackageManager.GET_META_DATA), context.takeFlags(RESOLVE_CONTENT_PROVIDER));
+		for (int i = 0; i < 2; i ++) assertNull(cache.resolve(context, "no.such.authority", 0));	// Null is also cached
+		assertEquals(1, context.takeFlags(RESOLVE_CONTENT_PROVIDER).size());
+
+		PackageChangeMonitor.invalidate();		// As if packages changed
+		assertTrue(PackageChangeMonitor.getGeneration(context) != generation);
+		assertNotNull(cache.resolve(context, Settings.AUTHORITY, 0));
+		assertEquals(1, context.takeFlags(RESOLVE_CONTENT_PROVIDER).size());
+	}
+
+	@Test public void testBurstQuarantine() {
+		final TestContext context = new TestContext();
+		final CondomOptions options = new CondomOptions().quarantineBurstingPackages(3, 60_000, 60_000);
+		final CondomContext condom = CondomContext.wrap(context, TAG, options), dry_condom = CondomContext.wrap(context, TAG, options.setDryRun(true));
+
+		for (int i = 0; i < 3; i ++) {
+			condom.sendBroadcast(intent().setPackage(ALLOWED_PACKAGE));
+			context.assertBaseCalled();
+		}
+		assertNull(condom.startService(intent().setPackage(ALLOWED_PACKAGE)));	// Burst across types
+		context.assertBaseNotCalled();
+		assertFalse(condom.bindService(intent().setPackage(ALLOWED_PACKAGE), SERVICE_CONNECTION, 0));	// In quarantine
+		context.assertBaseNotCalled();
+		condom.startService(intent().setPackage(DISALLOWED_PACKAGE));		// Other package is not affected
+		context.assertBaseCalled();
+
+		for (int i = 0; i < 5; i ++) {
+			dry_condom.sendBroadcast(intent().setPackage(ALLOWED_PACKAGE));
+			context.assertBaseCalled();
+		}
+	}
+
+	@Test public void testDeferDuringStartup() throws InterruptedException {
+		final TestContext context = new TestContext();
+		final CondomContext condom = CondomContext.wrap(context, TAG, new CondomOptions().deferDuringStartup(500, false));
+
+		assertEquals(ALLOWED_COMPONENT, condom.startService(intent().setComponent(ALLOWED_COMPONENT)));
+		assertEquals(ALLOWED_COMPONENT, condom.startService(intent().setComponent(ALLOWED_COMPONENT)));	// Coalesced
+		context.assertBaseNotCalled();
+		condom.startService(intent().setPackage(ALLOWED_PACKAGE));		// Implicit component cannot be deferred
+		context.assertBaseCalled();
+		condom.startService(intent().setPackage(context.getPackageName()));	// Self-targeting is never deferred
+		context.assertBaseCalled();
+
+		Thread.sleep(1_000);
+		context.assertBaseCalled();		// Replayed only once
+		condom.startService(intent().setComponent(ALLOWED_COMPONENT));	// After the startup window
+		context.assertBaseCalled();
+	}
+
+	@Test public void testStats() {
+		final TestContext context = new TestContext();
+		final CondomOptions options = new CondomOptions().setOutboundJudge((type, intent, target_pkg) -> ! DISALLOWED_PACKAGE.equals(target_pkg));
+		final CondomContext condom = CondomContext.wrap(context, "Stats", options), dry_condom = CondomContext.wrap(context, "Stats", options.setDryRun(true));
+		final CondomStats before = CondomStats.snapshot();
+
+		condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+		condom.startService(intent().setPackage(DISALLOWED_PACKAGE));
+		condom.startService(intent().setPackage(context.getPackageName()));
+		dry_condom.startService(intent().setPackage(DISALLOWED_PACKAGE));
+		condom.getPackageManager().queryIntentServices(intent(), 0);
+
+		final CondomStats after = CondomStats.snapshot();
+		assertTrue(after.getTags().contains("Condom.Stats"));
+		assertEquals(2, delta(before, after, OutboundType.START_SERVICE, CondomStats.Outcome.ALLOWED));
+		assertEquals(1, delta(before, after, OutboundType.START_SERVICE, CondomStats.Outcome.BLOCKED));
+		assertEquals(1, delta(before, after, OutboundType.START_SERVICE, CondomStats.Outcome.SELF_TARGET));
+		assertEquals(1, delta(before, after, OutboundType.START_SERVICE, CondomStats.Outcome.DRY_RUN_BLOCKED));
+		assertEquals(1, delta(before, after, OutboundType.QUERY_SERVICES, CondomStats.Outcome.FILTERED_CANDIDATE));
+	}
+
+	@Test public void testLatency() {
+		final TestContext context = new TestContext();
+		final CondomOptions options = new CondomOptions().recordLatency(true).setOutboundJudge((type, intent, target_pkg) -> ! DISALLOWED_PACKAGE.equals(target_pkg));
+		final CondomContext condom = CondomContext.wrap(context, "Latency", options);
+		final CondomStats before = CondomStats.snapshot();		// Histograms are process-wide, thus accumulated across test runs.
+		condom.startService(intent().setPackage(ALLOWED_PACKAGE));
+		condom.startService(intent().setPackage(DISALLOWED_PACKAGE));
+
+		final CondomStats stats = CondomStats.snapshot();
+		assertEquals(2, latencyCount(stats, CondomStats.Latency.OVERHEAD) - latencyCount(before, CondomStats.Latency.OVERHEAD));
+		assertEquals(1, latencyCount(stats, CondomStats.Latency.DOWNSTREAM) - latencyCount(before, CondomStats.Latency.DOWNSTREAM));	// Blocked request has no downstream call.
+		assertTrue(requireNonNull(stats.getLatency("Condom.Latency", OutboundType.START_SERVICE, CondomStats.Latency.DOWNSTREAM)).getPercentileUpperBound(100) > 0);
+		assertNull(stats.getLatency("Condom.Stats", OutboundType.START_SERVICE, CondomStats.Latency.OVERHEAD));
+	}
+
+	private static long latencyCount(final CondomStats stats, final CondomStats.Latency part) {
+		final CondomStats.Histogram histogram = stats.getLatency("Condom.Latency", OutboundType.START_SERVICE, part);
+		return histogram != null ? histogram.getTotalCount() : 0;
+	}
+
+	private static long delta(final CondomStats before, final CondomStats after, final OutboundType type, final CondomStats.Outcome outcome) {
+		return after.getCount("Condom.Stats", type, outcome) - before.getCount("Condom.Stats", type, outcome);
+	}
+
 	private static void with(final Intent[] intents, final Consumer<Intent>[] tests, final Runnable... expectations) {
 		for (final Intent intent : intents)
 			for (final Consumer<Intent> test : tests) {
@@ -281,6 +854,7 @@ public class CondomContextBlockingTest {
 	private static final String ALLOWED_PACKAGE = "x.y.z";
 	private static final ComponentName DISALLOWED_COMPONENT = new ComponentName(DISALLOWED_PACKAGE, "A");
 	private static final ComponentName ALLOWED_COMPONENT = new ComponentName(ALLOWED_PACKAGE, "A");
+	private static final ComponentName DENIED_COMPONENT = new ComponentName(ALLOWED_PACKAGE, "Denied");
 	private static final int FLAG_EXCLUDE_STOPPED_PACKAGES = SDK_INT >= HONEYCOMB_MR1 ? Intent.FLAG_EXCLUDE_STOPPED_PACKAGES : 0;
 	private static final int FLAG_INCLUDE_STOPPED_PACKAGES = SDK_INT >= HONEYCOMB_MR1 ? Intent.FLAG_INCLUDE_STOPPED_PACKAGES : 0;
 
@@ -439,5 +1013,48 @@ public class CondomContextBlockingTest {
 		final Runnable EXPECT_BASE_CALLED = this::assertBaseCalled;
 	}
 
+	/** Context with package manager recording the flags of calls to the methods overridden below, for verifying the IPC saved. */
+	private static class RecordingPackageManagerContext extends ContextWrapper {
+
+		@Override public PackageManager getPackageManager() {
+			return new PackageManagerWrapper(getBaseContext().getPackageManager()) {
+				@Override public ProviderInfo resolveContentProvider(final String name, final int flags) {
+					record(RESOLVE_CONTENT_PROVIDER, flags);
+					return super.resolveContentProvider(name, flags);
+				}
+
+				@Override public PackageInfo getPackageInfo(final String pkg, final int flags) throws NameNotFoundException {
+					record(GET_PACKAGE_INFO, flags);
+					return super.getPackageInfo(pkg, flags);
+				}
+
+				@Override public List<PackageInfo> getInstalledPackages(final int flags) {
+					record(GET_INSTALLED_PACKAGES, flags);
+					return super.getInstalledPackages(flags);
+				}
+			};
+		}
+
+		/** @return the flags of calls to the method since last taken. */
+		synchronized List<Integer> takeFlags(final String method) {
+			final List<Integer> flags = mCalls.remove(method);
+			return flags != null ? flags : Collections.<Integer>emptyList();
+		}
+
+		private synchronized void record(final String method, final int flags) {
+			List<Integer> calls = mCalls.get(method);
+			if (calls == null) mCalls.put(method, calls = new ArrayList<>());
+			calls.add(flags);
+		}
+
+		RecordingPackageManagerContext() { super(ApplicationProvider.getApplicationContext()); }
+
+		private final Map<String, List<Integer>> mCalls = new HashMap<>();
+	}
+
+	private static final String RESOLVE_CONTENT_PROVIDER = "resolveContentProvider";
+	private static final String GET_PACKAGE_INFO = "getPackageInfo";
+	private static final String GET_INSTALLED_PACKAGES = "getInstalledPackages";
+
 	private interface Consumer<T> { void accept(T t); }
 }
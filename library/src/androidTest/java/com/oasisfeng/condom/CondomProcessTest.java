@@ -17,6 +17,7 @@
 
 package com.oasisfeng.condom;
 
+import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.app.Application;
@@ -28,9 +29,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
+import android.content.pm.PackageInfo;
 import android.content.pm.ResolveInfo;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.IBinder;
 import android.os.Process;
+import android.os.UserHandle;
 import android.provider.Settings;
 
 import androidx.test.core.app.ApplicationProvider;
@@ -41,6 +46,12 @@ import com.oasisfeng.condom.simulation.TestApplication;
 import org.junit.Assume;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
@@ -49,6 +60,10 @@ import java.util.concurrent.TimeoutException;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR1;
+import static android.os.Build.VERSION_CODES.R;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
@@ -191,6 +206,128 @@ public class CondomProcessTest {
 		}});
 	}
 
+	@Test public void testDispatchTable() {
+		final List<String> invoked = new ArrayList<>();
+		final FakePackageManager service = new FakePackageManager() {
+			@Override public int getFlags(final int mask) { invoked.add("getFlags"); return mask & 0xFF; }
+			@Override public PackageInfo getPackageInfo(final String pkg, final int flags, final int user) {
+				invoked.add("getPackageInfo:" + pkg);
+				final PackageInfo info = new PackageInfo();
+				info.packageName = pkg;
+				return info;
+			}
+		};
+		final CondomOptions options = new CondomOptions().setOutboundJudge((type, intent, target_pkg) -> ! "a.b.c".equals(target_pkg));
+		final CondomCore condom = new CondomCore(context(), options, "Test");
+		final FakePackageManager proxy = (FakePackageManager) Proxy.newProxyInstance(context().getClassLoader(), new Class[] { FakePackageManager.class },
+				new CondomProcess.CondomProcessPackageManager(condom, FakePackageManager.class, service));
+
+		assertEquals(0x34, proxy.getFlags(0x1234));			// Not intercepted, passed through unchanged.
+		assertEquals(Collections.singletonList("getFlags"), invoked);
+		invoked.clear();
+
+		assertEquals("x.y.z", proxy.getPackageInfo("x.y.z", 0, 0).packageName);		// Intercepted and allowed
+		assertEquals(Collections.singletonList("getPackageInfo:x.y.z"), invoked);
+		invoked.clear();
+		assertNull(proxy.getPackageInfo("a.b.c", 0, 0));			// Intercepted and blocked by outbound judge
+		assertTrue(invoked.isEmpty());
+	}
+
+	interface FakePackageManager {
+		int getFlags(int mask);
+		PackageInfo getPackageInfo(String pkg, int flags, int user);
+	}
+
+	@Test public void testMultiplexContentObservers() throws Exception {
+		Assume.assumeTrue(SDK_INT >= JELLY_BEAN);		// No URI in change notification before Android 4.1
+		final List<Object> registered = new ArrayList<>();
+		final FakeContentService service = new FakeContentService() {
+			@Override public void registerContentObserver(final Uri uri, final boolean descendants, final Object observer, final int user) { registered.add(observer); }
+			@Override public void unregisterContentObserver(final Object observer) { assertTrue(registered.remove(observer)); }
+		};
+		final CondomCore condom = new CondomCore(context(), new CondomOptions(), "Test");
+		final FakeContentService proxy = (FakeContentService) Proxy.newProxyInstance(context().getClassLoader(), new Class[] { FakeContentService.class },
+				new CondomProcess.CondomProcessContentService(condom, FakeContentService.class, service));
+		final List<String> changes = new ArrayList<>();
+		final Object transport1 = getTransport(new RecordingObserver("1", changes)), transport2 = getTransport(new RecordingObserver("2", changes)),
+				transport3 = getTransport(new RecordingObserver("3", changes));
+		final Uri uri = Uri.parse("content://com.example/a"), uri2 = Uri.parse("content://com.example/b");
+		final int user = Process.myUid() / 100_000;
+
+		proxy.registerContentObserver(uri, false, transport1, user);
+		proxy.registerContentObserver(uri, false, transport2, user);		// Shares the registration
+		proxy.registerContentObserver(uri, true, transport3, user);		// Different descendants flag
+		assertEquals(2, registered.size());
+
+		final Object shared = registered.get(0);
+		if (SDK_INT >= R) {			// Flags and batch of URIs are forwarded as received.
+			invokeObserver(shared, "onChangeEtc", false, new Uri[] { uri, uri2 }, ContentResolver.NOTIFY_INSERT, user);
+			assertEquals(Arrays.asList("1:" + uri + "#" + ContentResolver.NOTIFY_INSERT, "1:" + uri2 + "#" + ContentResolver.NOTIFY_INSERT,
+					"2:" + uri + "#" + ContentResolver.NOTIFY_INSERT, "2:" + uri2 + "#" + ContentResolver.NOTIFY_INSERT), changes);
+		} else {
+			if (SDK_INT >= JELLY_BEAN_MR1) invokeObserver(shared, "onChange", false, uri, user);
+			else invokeObserver(shared, "onChange", false, uri);		// Android 4.1
+			assertEquals(Arrays.asList("1:" + uri, "2:" + uri), changes);		// Fanned out to all subscribers
+		}
+
+		proxy.unregisterContentObserver(transport1);
+		assertEquals(2, registered.size());
+		proxy.unregisterContentObserver(transport2);		// The last subscriber
+		assertEquals(1, registered.size());
+		proxy.unregisterContentObserver(transport3);
+		assertTrue(registered.isEmpty());
+
+		proxy.registerContentObserver(uri, false, transport1, user);
+		proxy.registerContentObserver(uri2, false, transport1, user);		// One observer on two URIs
+		assertEquals(2, registered.size());
+		final List<Object> vacant = new ArrayList<>(registered);
+		proxy.unregisterContentObserver(transport1);		// From both
+		assertTrue(registered.isEmpty());
+		changes.clear();
+		for (int i = 0; i < 2; i ++) {
+			final Uri changed = i == 0 ? uri : uri2;
+			if (SDK_INT >= R) invokeObserver(vacant.get(i), "onChangeEtc", false, new Uri[] { changed }, 0, user);
+			else if (SDK_INT >= JELLY_BEAN_MR1) invokeObserver(vacant.get(i), "onChange", false, changed, user);
+			else invokeObserver(vacant.get(i), "onChange", false, changed);
+		}
+		assertTrue(changes.isEmpty());
+	}
+
+	interface FakeContentService {
+		void registerContentObserver(Uri uri, boolean descendants, Object observer, int user);
+		void unregisterContentObserver(Object observer);
+	}
+
+	private static class RecordingObserver extends ContentObserver {
+
+		@Override public void onChange(final boolean self_change, final Uri uri) { mChanges.add(mName + ":" + uri); }
+
+		@Override public void onChange(final boolean self_change, final Collection<Uri> uris, final int flags, final UserHandle user) {
+			assertEquals(Process.myUserHandle(), user);
+			for (final Uri uri : uris) mChanges.add(mName + ":" + uri + "#" + flags);
+		}
+
+		RecordingObserver(final String name, final List<String> changes) { super(null); mName = name; mChanges = changes; }
+
+		private final String mName;
+		private final List<String> mChanges;
+	}
+
+	@SuppressLint("DiscouragedPrivateApi") private static Object getTransport(final ContentObserver observer) throws ReflectiveOperationException {
+		final Method getContentObserver = ContentObserver.class.getDeclaredMethod("getContentObserver");
+		getContentObserver.setAccessible(true);
+		return getContentObserver.invoke(observer);
+	}
+
+	private static void invokeObserver(final Object transport, final String name, final Object... args) throws ReflectiveOperationException {
+		for (final Method method : Class.forName("android.database.IContentObserver").getMethods())
+			if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+				method.invoke(transport, args);
+				return;
+			}
+		throw new NoSuchMethodException(name);
+	}
+
 	private static void runInSeparateProcess(final TestService.Procedure procedure) {
 		final Context context = context();
 		final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
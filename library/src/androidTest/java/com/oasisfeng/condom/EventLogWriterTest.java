@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Intent;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+
+import static com.oasisfeng.condom.BackgroundThreadTest.waitForBackgroundThread;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Test cases for {@link EventLogWriter}
+ *
+ * Created by agent on 2026/10/17.
+ */
+public class EventLogWriterTest {
+
+	@Test public void testAsyncWriting() throws InterruptedException {
+		final String pkg = ApplicationProvider.getApplicationContext().getPackageName();
+		final EventLogWriter dropping = new EventLogWriter(pkg, false, 4, true), writing_through = new EventLogWriter(pkg, false, 4, false);
+		for (int i = 0; i < 6; i ++) for (final EventLogWriter writer : new EventLogWriter[] { dropping, writing_through })
+			writer.write(CondomCore.CondomEvent.CONCERN, TAG, "EventLogWriter", String.valueOf(i), null);
+		assertEquals(2, dropping.getNumDropped());				// Ring buffer overflow
+		assertEquals(2, writing_through.getNumWrittenThrough());
+		assertEquals(0, dropping.getNumWrittenAsync());			// Not yet flushed in batch
+
+		waitForBackgroundThread(EventLogWriter.BATCH_DELAY_MILLIS);
+		assertEquals(4, dropping.getNumWrittenAsync());
+		assertEquals(4, writing_through.getNumWrittenAsync());
+
+		for (int i = 0; i < 4; i ++) dropping.write(CondomCore.CondomEvent.CONCERN, TAG, "EventLogWriter", null, new Intent("com.example.TEST"));	// Slots are released
+		assertEquals(2, dropping.getNumDropped());
+		waitForBackgroundThread(EventLogWriter.BATCH_DELAY_MILLIS);
+		assertEquals(8, dropping.getNumWrittenAsync());
+	}
+
+	private static final String TAG = "Test";
+}
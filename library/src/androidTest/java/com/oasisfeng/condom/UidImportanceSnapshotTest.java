@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+
+import static com.oasisfeng.condom.BackgroundThreadTest.waitForBackgroundThread;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Test cases for {@link UidImportanceSnapshot}
+ *
+ * Created by agent on 2026/10/17.
+ */
+public class UidImportanceSnapshotTest {
+
+	@Test public void testLifetime() throws InterruptedException {
+		final Context context = ApplicationProvider.getApplicationContext();
+		final long time = SystemClock.elapsedRealtime() + 60_000;		// Far beyond the existent snapshot (if any), thus refreshed synchronously.
+		final UidImportanceSnapshot snapshot = UidImportanceSnapshot.get(context, time);
+		assertEquals(time, snapshot.mTime);
+		assertSame(snapshot, UidImportanceSnapshot.get(context, time + 500));		// Fresh
+
+		assertSame(snapshot, UidImportanceSnapshot.get(context, time + 2_000));	// Stale: still used, while refreshed in background
+		waitForBackgroundThread(0);
+		final UidImportanceSnapshot refreshed = UidImportanceSnapshot.get(context, SystemClock.elapsedRealtime());
+		assertNotSame(snapshot, refreshed);
+
+		assertNotSame(refreshed, UidImportanceSnapshot.get(context, refreshed.mTime + 20_000));	// Too stale: refreshed synchronously
+	}
+}
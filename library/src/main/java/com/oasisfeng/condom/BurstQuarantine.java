@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Quarantine of target packages receiving bursts of outbound requests, detected by sliding window counter per package.
+ *
+ * <p>The window is approximated by a ring of fixed buckets, so counting takes constant time and space regardless of the request rate.
+ *
+ * <p>Counters with both the window and the quarantine expired are equivalent to absent ones. They are swept at most once per window.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class BurstQuarantine {
+
+	static final int PASS = 0, QUARANTINE_STARTED = 1, IN_QUARANTINE = 2;
+
+	/** Count the request to target package. @return {@link #PASS}, {@link #QUARANTINE_STARTED} or {@link #IN_QUARANTINE} */
+	int count(final String target_pkg) {
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (mCounters) {
+			final long bucket = now / mBucketWidth;
+			if (bucket - mLastSweepBucket >= NUM_BUCKETS) {
+				mLastSweepBucket = bucket;
+				final Iterator<Counter> iterator = mCounters.values().iterator();
+				while (iterator.hasNext()) {
+					final Counter counter = iterator.next();
+					if (bucket - counter.last_bucket >= NUM_BUCKETS && now >= counter.quarantined_until) iterator.remove();
+				}
+			}
+			Counter counter = mCounters.get(target_pkg);
+			if (counter == null) mCounters.put(target_pkg, counter = new Counter());
+			if (counter.quarantined_until != 0) {
+				if (now < counter.quarantined_until) return IN_QUARANTINE;
+				counter.quarantined_until = 0;
+				counter.reset();		// Start over after cool-down
+			}
+			if (counter.increment(bucket) <= mThreshold) return PASS;
+			counter.quarantined_until = now + mCooldown;
+			return QUARANTINE_STARTED;
+		}
+	}
+
+	BurstQuarantine(final int threshold, final long window_millis, final long cooldown_millis) {
+		mThreshold = threshold;
+		mBucketWidth = Math.max(window_millis / NUM_BUCKETS, 1);
+		mCooldown = cooldown_millis;
+	}
+
+	private final Map<String, Counter> mCounters = new HashMap<>();
+	private final int mThreshold;
+	private final long mBucketWidth;
+	private final long mCooldown;
+	private long mLastSweepBucket;
+
+	private static final int NUM_BUCKETS = 10;
+
+	private static class Counter {
+
+		/** @return the total count in window after increment */
+		int increment(final long bucket) {
+			if (bucket - last_bucket >= NUM_BUCKETS) reset();
+			else for (long b = last_bucket + 1; b <= bucket; b ++) {	// Expire the buckets slid out of window
+				final int index = (int) (b % NUM_BUCKETS);
+				total -= counts[index];
+				counts[index] = 0;
+			}
+			last_bucket = Math.max(bucket, last_bucket);
+			counts[(int) (last_bucket % NUM_BUCKETS)] ++;
+			return ++ total;
+		}
+
+		void reset() {
+			for (int i = 0; i < NUM_BUCKETS; i ++) counts[i] = 0;
+			total = 0;
+		}
+
+		final int[] counts = new int[NUM_BUCKETS];
+		int total;
+		long last_bucket;
+		long quarantined_until;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.oasisfeng.condom.util.Lazy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Handler on the condom-owned background thread shared by all tags, for callbacks (e.g. {@link android.content.BroadcastReceiver#onReceive})
+ * otherwise dispatched on the main thread. Queue depth and latency of dispatch are recorded per tag in {@link CondomStats}.
+ *
+ * <p>Queue depth is approximate, since messages removed before dispatch are not tracked.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class CallbackHandler extends Handler implements Executor {
+
+	static CallbackHandler get(final String tag) {
+		synchronized (sHandlers) {
+			CallbackHandler handler = sHandlers.get(tag);
+			if (handler == null) sHandlers.put(tag, handler = new CallbackHandler(CondomStats.getCallbackMetrics(tag)));
+			return handler;
+		}
+	}
+
+	@Override public boolean sendMessageAtTime(final Message msg, final long uptime_millis) {
+		final boolean result = super.sendMessageAtTime(msg, uptime_millis);
+		if (result) mMetrics.onEnqueued();
+		return result;
+	}
+
+	@Override public void dispatchMessage(final Message msg) {
+		final long queueing_nanos = Math.max(SystemClock.uptimeMillis() - msg.getWhen(), 0) * 1_000_000;	// Message.when is in milliseconds
+		final long start = System.nanoTime();
+		try {
+			super.dispatchMessage(msg);
+		} finally {
+			mMetrics.onDispatched(queueing_nanos, System.nanoTime() - start);
+		}
+	}
+
+	@Override public void execute(final Runnable command) {
+		if (! post(command)) throw new RejectedExecutionException("Callback thread is not running");
+	}
+
+	private CallbackHandler(final CondomStats.CallbackMetrics metrics) {
+		super(sThread.get().getLooper());
+		mMetrics = metrics;
+	}
+
+	private final CondomStats.CallbackMetrics mMetrics;
+
+	private static final Map<String, CallbackHandler> sHandlers = new HashMap<>();
+	private static final Lazy<HandlerThread> sThread = new Lazy<HandlerThread>() { @Override protected HandlerThread create() {
+		final HandlerThread thread = new HandlerThread("Condom-Callback", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		return thread;
+	}};
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decide which occurrences of concern should be logged, per call site: the tag, the label (the concerned API) and the caller.
+ *
+ * <p>The first N occurrences of each call site are always sampled, then one in every M. The rest are only counted, and flushed
+ * periodically as {@link CondomCore.CondomEvent#CONCERN_SUPPRESSED} events with the tag, label, caller and count.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class ConcernSampler {
+
+	/** @return whether this occurrence should be logged, otherwise it is counted for later flush. */
+	boolean sample(final String tag, final String label, final String caller) {
+		final String call_site = label + '@' + caller;
+		synchronized (mCounters) {
+			Map<String, Counter> counters = mCounters.get(tag);
+			if (counters == null) mCounters.put(tag, counters = new HashMap<>());
+			Counter counter = counters.get(call_site);
+			if (counter == null) counters.put(call_site, counter = new Counter(label, caller));
+			final int occurrence = ++ counter.occurrences;
+			if (occurrence <= mFirstN || (mSampleRate > 0 && (occurrence - mFirstN) % mSampleRate == 0)) return true;
+			counter.suppressed ++;
+			if (! mFlushScheduled) {
+				mFlushScheduled = true;
+				BackgroundThread.postDelayed(this::flush, FLUSH_INTERVAL_MILLIS);
+			}
+			return false;
+		}
+	}
+
+	@VisibleForTesting void flush() {
+		synchronized (mCounters) {
+			mFlushScheduled = false;
+			for (final Map.Entry<String, Map<String, Counter>> tag_counters : mCounters.entrySet())
+				for (final Counter counter : tag_counters.getValue().values()) {
+					if (counter.suppressed == 0) continue;
+					mEventLog.write(CondomCore.CondomEvent.CONCERN_SUPPRESSED, tag_counters.getKey(), counter.label, counter.caller + " x" + counter.suppressed, null);
+					counter.suppressed = 0;
+				}
+		}
+	}
+
+	ConcernSampler(final EventLogWriter event_log, final int first_n, final int sample_rate) {
+		mEventLog = event_log;
+		mFirstN = first_n;
+		mSampleRate = sample_rate;
+	}
+
+	private final EventLogWriter mEventLog;
+	private final int mFirstN;
+	private final int mSampleRate;
+	private final Map<String/* tag */, Map<String/* label@caller */, Counter>> mCounters = new HashMap<>();
+	private boolean mFlushScheduled;
+
+	private static final long FLUSH_INTERVAL_MILLIS = 60_000;
+
+	private static class Counter {
+		Counter(final String label, final String caller) { this.label = label; this.caller = caller; }
+		final String label;
+		final String caller;
+		int occurrences;
+		int suppressed;
+	}
+}
@@ -92,7 +92,7 @@ class CondomApplication extends Application {
 	}
 
 	@Override public ComponentName startService(final Intent intent) {
-		final ComponentName component = mCondom.proceed(OutboundType.START_SERVICE, intent, null, new CondomCore.WrappedValueProcedure<ComponentName>() { @Override public ComponentName proceed() {
+		final ComponentName component = mCondom.proceedStartService(intent, mApplication::startService, new CondomCore.WrappedValueProcedure<ComponentName>() { @Override public ComponentName proceed() {
 			return mApplication.startService(intent);
 		}});
 		if (component != null) mCondom.logIfOutboundPass(TAG, intent, component.getPackageName(), CondomCore.CondomEvent.START_PASS);
@@ -101,13 +101,15 @@ class CondomApplication extends Application {
 
 	@Override public void sendBroadcast(final Intent intent) {
 		mCondom.proceedBroadcast(this, intent, new CondomCore.WrappedProcedure() { @Override public void run() {
-			mApplication.sendBroadcast(intent);
+			if (! mCondom.deferDuringStartup(OutboundType.BROADCAST, intent, null, mApplication::sendBroadcast))
+				mApplication.sendBroadcast(intent);
 		}}, null);
 	}
 
 	@Override public void sendBroadcast(final Intent intent, final String receiverPermission) {
 		mCondom.proceedBroadcast(this, intent, new CondomCore.WrappedProcedure() { @Override public void run() {
-			mApplication.sendBroadcast(intent, receiverPermission);
+			if (! mCondom.deferDuringStartup(OutboundType.BROADCAST, intent, receiverPermission, i -> mApplication.sendBroadcast(i, receiverPermission)))
+				mApplication.sendBroadcast(intent, receiverPermission);
 		}}, null);
 	}
 
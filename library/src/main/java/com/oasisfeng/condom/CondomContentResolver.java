@@ -21,6 +21,18 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.IContentProvider;
 import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static android.os.Build.VERSION_CODES.N;
+import static android.os.Build.VERSION_CODES.R;
 
 /**
  * Condom wrapper of {@link ContentResolver}
@@ -31,18 +43,53 @@ class CondomContentResolver extends ContentResolverWrapper {
 
 	@Override public IContentProvider acquireUnstableProvider(final Context context, final String name) {
 		if (! mCondom.shouldAllowProvider(context, name, PackageManager.MATCH_ALL)) return null;
-		return super.acquireUnstableProvider(context, name);
+		return guard(super.acquireUnstableProvider(context, name), name);
 	}
 
 	@Override public IContentProvider acquireProvider(final Context context, final String name) {
 		if (! mCondom.shouldAllowProvider(context, name, PackageManager.MATCH_ALL)) return null;
-		return super.acquireProvider(context, name);
+		return guard(super.acquireProvider(context, name), name);
+	}
+
+	private IContentProvider guard(final @Nullable IContentProvider provider, final String authority) {
+		return provider != null && mQueryGuard != null ? mQueryGuard.wrap(provider, authority) : provider;
+	}
+
+	@Override public boolean releaseProvider(final IContentProvider icp) { return super.releaseProvider(ContentQueryGuard.unwrap(icp)); }
+	@Override public boolean releaseUnstableProvider(final IContentProvider icp) { return super.releaseUnstableProvider(ContentQueryGuard.unwrap(icp)); }
+	@Override public void unstableProviderDied(final IContentProvider icp) { super.unstableProviderDied(ContentQueryGuard.unwrap(icp)); }
+
+	@Override public void notifyChange(final Uri uri, final @Nullable ContentObserver observer) {
+		if (mNotifyChangeCoalescer == null || ! mNotifyChangeCoalescer.coalesce(Arrays.asList(uri, observer),
+				() -> super.notifyChange(uri, observer))) super.notifyChange(uri, observer);
+	}
+
+	@Override public void notifyChange(final Uri uri, final @Nullable ContentObserver observer, final boolean syncToNetwork) {
+		if (mNotifyChangeCoalescer == null || ! mNotifyChangeCoalescer.coalesce(Arrays.asList(uri, observer, syncToNetwork),
+				() -> super.notifyChange(uri, observer, syncToNetwork))) super.notifyChange(uri, observer, syncToNetwork);
+	}
+
+	@RequiresApi(N) @Override public void notifyChange(final Uri uri, final @Nullable ContentObserver observer, final int flags) {
+		if (mNotifyChangeCoalescer == null || ! mNotifyChangeCoalescer.coalesce(Arrays.asList(uri, observer, flags),
+				() -> super.notifyChange(uri, observer, flags))) super.notifyChange(uri, observer, flags);
+	}
+
+	@RequiresApi(R) @Override public void notifyChange(final Collection<Uri> uris, final @Nullable ContentObserver observer, final int flags) {
+		final List<Uri> uri_list = new ArrayList<>(uris);		// Copied as key, in case the collection is changed by caller later.
+		if (mNotifyChangeCoalescer == null || ! mNotifyChangeCoalescer.coalesce(Arrays.asList(uri_list, observer, flags),
+				() -> super.notifyChange(uri_list, observer, flags))) super.notifyChange(uris, observer, flags);
 	}
 
-	CondomContentResolver(final CondomCore condom, final Context context, final ContentResolver base) {
+	CondomContentResolver(final CondomCore condom, final Context context, final ContentResolver base, final long notify_change_window,
+						  final @Nullable ContentQueryGuard query_guard, final String tag) {
 		super(context, base);
 		mCondom = condom;
+		mQueryGuard = query_guard;
+		mNotifyChangeCoalescer = notify_change_window >= 0
+				? new NotifyChangeCoalescer(notify_change_window, CondomStats.getNotificationMetrics(tag)) : null;
 	}
 
 	private final CondomCore mCondom;
+	private final @Nullable NotifyChangeCoalescer mNotifyChangeCoalescer;
+	private final @Nullable ContentQueryGuard mQueryGuard;
 }
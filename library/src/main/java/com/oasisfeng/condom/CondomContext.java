@@ -25,6 +25,7 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
@@ -40,6 +41,8 @@ import androidx.annotation.Size;
 
 import com.oasisfeng.condom.util.Lazy;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
@@ -105,6 +108,12 @@ public class CondomContext extends ContextWrapper {
 	/* ****** Hooked Context APIs ****** */
 
 	@Override public boolean bindService(final Intent intent, final ServiceConnection conn, final int flags) {
+		final ServiceBindingPool pool = mCondom.mServiceBindingPool;
+		if (pool != null && intent.getComponent() != null)
+			return doBindService(intent, () -> pool.bind(mCondom.mBase.getApplicationContext(), intent, conn, flags));
+		final CallbackHandler handler = mCondom.mCallbackHandler;
+		if (handler != null && SDK_INT >= Q)
+			return doBindService(intent, () -> CondomContext.super.bindService(intent, flags, handler, conn));
 		return doBindService(intent, () -> CondomContext.super.bindService(intent, conn, flags));
 	}
 
@@ -122,8 +131,69 @@ public class CondomContext extends ContextWrapper {
 		return result;
 	}
 
+	@Override public void unbindService(final ServiceConnection conn) {
+		final ServiceBindingPool pool = mCondom.mServiceBindingPool;
+		if (pool == null || ! pool.unbind(conn)) super.unbindService(conn);
+	}
+
+	@Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter) {
+		final ReceiverMultiplexer multiplexer = getReceiverMultiplexer(receiver, filter);
+		final Handler scheduler = mCondom.mCallbackHandler;
+		if (multiplexer != null) return multiplexer.register(mCondom.mBase.getApplicationContext(), receiver, filter, null, scheduler, 0);
+		trackDirectReceiver(receiver);
+		return scheduler != null ? super.registerReceiver(receiver, filter, null, scheduler) : super.registerReceiver(receiver, filter);
+	}
+
+	@RequiresApi(O) @Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter, final int flags) {
+		final ReceiverMultiplexer multiplexer = getReceiverMultiplexer(receiver, filter);
+		final Handler scheduler = mCondom.mCallbackHandler;
+		if (multiplexer != null) return multiplexer.register(mCondom.mBase.getApplicationContext(), receiver, filter, null, scheduler, flags);
+		trackDirectReceiver(receiver);
+		return scheduler != null ? super.registerReceiver(receiver, filter, null, scheduler, flags) : super.registerReceiver(receiver, filter, flags);
+	}
+
+	@Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter, final String permission, final @Nullable Handler scheduler) {
+		final ReceiverMultiplexer multiplexer = getReceiverMultiplexer(receiver, filter);
+		final Handler actual_scheduler = scheduler != null ? scheduler : mCondom.mCallbackHandler;
+		if (multiplexer == null) {
+			trackDirectReceiver(receiver);
+			return super.registerReceiver(receiver, filter, permission, actual_scheduler);
+		}
+		return multiplexer.register(mCondom.mBase.getApplicationContext(), receiver, filter, permission, actual_scheduler, 0);
+	}
+
+	@RequiresApi(O) @Override public Intent registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter, final String permission,
+															 final @Nullable Handler scheduler, final int flags) {
+		final ReceiverMultiplexer multiplexer = getReceiverMultiplexer(receiver, filter);
+		final Handler actual_scheduler = scheduler != null ? scheduler : mCondom.mCallbackHandler;
+		if (multiplexer == null) {
+			trackDirectReceiver(receiver);
+			return super.registerReceiver(receiver, filter, permission, actual_scheduler, flags);
+		}
+		return multiplexer.register(mCondom.mBase.getApplicationContext(), receiver, filter, permission, actual_scheduler, flags);
+	}
+
+	private @Nullable ReceiverMultiplexer getReceiverMultiplexer(final @Nullable BroadcastReceiver receiver, final IntentFilter filter) {
+		final ReceiverMultiplexer multiplexer = mCondom.mReceiverMultiplexer;
+		return multiplexer != null && receiver != null && ReceiverMultiplexer.canMultiplex(filter) ? multiplexer : null;
+	}
+
+	/** Track receivers registered directly while multiplexing is enabled, since the same receiver may also be registered via multiplexer. */
+	private void trackDirectReceiver(final @Nullable BroadcastReceiver receiver) {
+		if (receiver == null || mCondom.mReceiverMultiplexer == null) return;
+		synchronized (mDirectReceivers) { mDirectReceivers.add(receiver); }
+	}
+
+	@Override public void unregisterReceiver(final BroadcastReceiver receiver) {
+		final ReceiverMultiplexer multiplexer = mCondom.mReceiverMultiplexer;
+		if (multiplexer == null) { super.unregisterReceiver(receiver); return; }
+		final boolean direct;
+		synchronized (mDirectReceivers) { direct = mDirectReceivers.remove(receiver); }
+		if (! multiplexer.unregister(receiver) || direct) super.unregisterReceiver(receiver);
+	}
+
 	@Override public ComponentName startService(final Intent intent) {
-		final ComponentName component = mCondom.proceed(OutboundType.START_SERVICE, intent, null, () ->
+		final ComponentName component = mCondom.proceedStartService(intent, CondomContext.super::startService, () ->
 				CondomContext.super.startService(intent));
 		if (component != null) mCondom.logIfOutboundPass(TAG, intent, component.getPackageName(), CondomCore.CondomEvent.START_PASS);
 		return component;
@@ -131,13 +201,15 @@ public class CondomContext extends ContextWrapper {
 
 	@Override public void sendBroadcast(final Intent intent) {
 		mCondom.proceedBroadcast(this, intent, new CondomCore.WrappedProcedure() { @Override public void run() {
-			CondomContext.super.sendBroadcast(intent);
+			if (! mCondom.deferDuringStartup(OutboundType.BROADCAST, intent, null, CondomContext.super::sendBroadcast))
+				CondomContext.super.sendBroadcast(intent);
 		}}, null);
 	}
 
 	@Override public void sendBroadcast(final Intent intent, final String receiverPermission) {
 		mCondom.proceedBroadcast(this, intent, new CondomCore.WrappedProcedure() { @Override public void run() {
-			CondomContext.super.sendBroadcast(intent, receiverPermission);
+			if (! mCondom.deferDuringStartup(OutboundType.BROADCAST, intent, receiverPermission, i -> CondomContext.super.sendBroadcast(i, receiverPermission)))
+				CondomContext.super.sendBroadcast(intent, receiverPermission);
 		}}, null);
 	}
 
@@ -238,6 +310,7 @@ public class CondomContext extends ContextWrapper {
 	CondomCore mCondom;
 	private final Context mApplicationContext;
 	private final Lazy<Context> mBaseContext;
+	private final Set<BroadcastReceiver> mDirectReceivers = new HashSet<>();		// Only if receivers are multiplexed
 	final String TAG;
 
 	/* ****** Internal branch functionality ****** */
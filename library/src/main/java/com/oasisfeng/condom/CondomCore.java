@@ -18,7 +18,6 @@
 package com.oasisfeng.condom;
 
 import android.annotation.SuppressLint;
-import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentResolver;
@@ -35,7 +34,6 @@ import android.content.pm.ResolveInfo;
 import android.os.Handler;
 import android.os.Process;
 import android.provider.Settings;
-import android.util.EventLog;
 import android.util.Log;
 import androidx.annotation.CheckResult;
 import androidx.annotation.Keep;
@@ -44,11 +42,11 @@ import androidx.annotation.RequiresApi;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.VisibleForTesting;
 
+import com.oasisfeng.condom.CondomStats.Outcome;
 import com.oasisfeng.condom.ext.PackageManagerFactory;
 import com.oasisfeng.condom.util.Lazy;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -57,12 +55,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static android.app.ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND;
-import static android.content.Context.ACTIVITY_SERVICE;
 import static android.content.pm.ApplicationInfo.FLAG_SYSTEM;
 import static android.os.Build.VERSION.SDK_INT;
 import static android.os.Build.VERSION_CODES.HONEYCOMB_MR1;
-import static android.os.Build.VERSION_CODES.LOLLIPOP_MR1;
 import static android.os.Build.VERSION_CODES.N;
 import static android.os.Build.VERSION_CODES.O;
 
@@ -93,17 +88,45 @@ class CondomCore {
 			resultReceiver.onReceive(new ReceiverRestrictedContext(context), intent);
 	}
 
+	/**
+	 * @param replay the replay of deferred request during startup
+	 * @param procedure the procedure to actually start service
+	 */
+	<T extends Throwable> ComponentName proceedStartService(final Intent intent, final StartupQuietPeriod.Replay replay,
+															final WrappedValueProcedureThrows<ComponentName, T> procedure) throws T {
+		return proceed(OutboundType.START_SERVICE, intent, null, () -> {
+			if (deferDuringStartup(OutboundType.START_SERVICE, intent, null, replay)) return intent.getComponent();
+			final StartServiceCoalescer coalescer = mStartServiceCoalescer;
+			if (coalescer == null || mDryRun || mBase.getPackageName().equals(getTargetPackage(intent))) return procedure.proceed();
+			final ComponentName previous = coalescer.lookup(intent);
+			if (previous != null) {
+				mStats.increment(OutboundType.START_SERVICE, Outcome.COALESCED);
+				return previous;
+			}
+			final ComponentName component = procedure.proceed();
+			if (component != null) coalescer.onStarted(intent, component);
+			return component;
+		});
+	}
+
 	@CheckResult <R, T extends Throwable> R proceed(final OutboundType type, final @Nullable Intent intent, final @Nullable R negative_value,
 													final WrappedValueProcedureThrows<R, T> procedure) throws T {
+		final long start = mLatency != null ? System.nanoTime() : 0;
 		final String target_pkg = intent != null ? getTargetPackage(intent) : null;
 		if (target_pkg != null) {
-			if (mBase.getPackageName().equals(target_pkg)) return procedure.proceed();	// Self-targeting request is allowed unconditionally
-
-			if (shouldBlockRequestTarget(type, intent, target_pkg)) return negative_value;
+			if (mBase.getPackageName().equals(target_pkg)) {		// Self-targeting request is allowed unconditionally
+				mStats.increment(type, Outcome.SELF_TARGET);
+				return proceedAndRecordLatency(type, start, procedure);
+			}
+			if (shouldBlockRequestTarget(type, intent, target_pkg, Outcome.BLOCKED) || shouldThrottle(type, target_pkg) || shouldQuarantine(type, target_pkg)) {
+				recordOverhead(type, start);
+				return negative_value;
+			}
 		}
+		mStats.increment(type, Outcome.ALLOWED);
 		final int original_flags = intent != null ? adjustIntentFlags(type, intent) : 0;
 		try {
-			return procedure.proceed();
+			return proceedAndRecordLatency(type, start, procedure);
 		} finally {
 			if (intent != null) intent.setFlags(original_flags);
 		}
@@ -111,9 +134,50 @@ class CondomCore {
 
 	@CheckResult <R, T extends Throwable> R proceed(final OutboundType type, final String target_pkg, final @Nullable R negative_value,
 													final WrappedValueProcedureThrows<R, T> procedure) throws T {
-		if (mBase.getPackageName().equals(target_pkg)) return procedure.proceed();	// Self-targeting request is allowed unconditionally
-		if (shouldBlockRequestTarget(type, null, target_pkg)) return negative_value;
-		return procedure.proceed();
+		final long start = mLatency != null ? System.nanoTime() : 0;
+		if (mBase.getPackageName().equals(target_pkg)) {		// Self-targeting request is allowed unconditionally
+			mStats.increment(type, Outcome.SELF_TARGET);
+			return proceedAndRecordLatency(type, start, procedure);
+		}
+		if (shouldBlockRequestTarget(type, null, target_pkg, Outcome.BLOCKED) || shouldThrottle(type, target_pkg) || shouldQuarantine(type, target_pkg)) {
+			recordOverhead(type, start);
+			return negative_value;
+		}
+		mStats.increment(type, Outcome.ALLOWED);
+		return proceedAndRecordLatency(type, start, procedure);
+	}
+
+	/** Proceed and record the latency of downstream call, excluding the nested overhead (e.g. candidates filtering) inside the procedure. */
+	private <R, T extends Throwable> R proceedAndRecordLatency(final OutboundType type, final long start, final WrappedValueProcedureThrows<R, T> procedure) throws T {
+		final CondomStats.Histograms latency = mLatency;
+		if (latency == null) return procedure.proceed();
+		final long[] nested_overhead = sNestedOverhead.get();
+		final long outer_nested_overhead = nested_overhead[0];
+		nested_overhead[0] = 0;
+		final long downstream_start = System.nanoTime();
+		boolean completed = false;
+		try {
+			final R result = procedure.proceed();
+			completed = true;
+			return result;
+		} finally {
+			final long downstream = System.nanoTime() - downstream_start - nested_overhead[0];
+			if (completed) {	// Latency of aborted call is meaningless. Overhead after the procedure (restoring intent flags) is negligible.
+				latency.record(type, CondomStats.Latency.DOWNSTREAM, Math.max(downstream, 0));
+				latency.record(type, CondomStats.Latency.OVERHEAD, downstream_start - start + nested_overhead[0]);
+			}
+			nested_overhead[0] = outer_nested_overhead;
+		}
+	}
+
+	private void recordOverhead(final OutboundType type, final long start) {
+		final CondomStats.Histograms latency = mLatency;
+		if (latency != null) latency.record(type, CondomStats.Latency.OVERHEAD, System.nanoTime() - start);
+	}
+
+	/** Account the time spent in condom since <code>start</code> as overhead nested in the procedure of current thread. */
+	private void addNestedOverhead(final long start) {
+		if (mLatency != null) sNestedOverhead.get()[0] += System.nanoTime() - start;
 	}
 
 	@CheckResult <T, E extends Throwable> List<T> proceedQuery(final OutboundType type, final @Nullable Intent intent,
@@ -121,14 +185,16 @@ class CondomCore {
 		return proceed(type, intent, Collections.emptyList(), () -> {
 			final List<T> candidates = procedure.proceed();
 
-			if (candidates != null && mOutboundJudge != null && (intent == null || getTargetPackage(intent) == null)) {	// Package-targeted intent is already filtered by OutboundJudge in proceed().
+			if (candidates != null && hasOutboundJudge() && (intent == null || getTargetPackage(intent) == null)) {	// Package-targeted intent is already filtered by OutboundJudge in proceed().
+				final long start = mLatency != null ? System.nanoTime() : 0;
 				final Iterator<T> iterator = candidates.iterator();
 				while (iterator.hasNext()) {
 					final T candidate = iterator.next();
 					final String pkg = pkg_getter.apply(candidate);
-					if (pkg != null && shouldBlockRequestTarget(type, intent, pkg))		// Dry-run is checked inside shouldBlockRequestTarget()
+					if (pkg != null && shouldBlockRequestTarget(type, intent, pkg, Outcome.FILTERED_CANDIDATE))		// Dry-run is checked inside shouldBlockRequestTarget()
 						iterator.remove();		// TODO: Not safe to assume the list returned from PackageManager is modifiable.
 				}
+				addNestedOverhead(start);
 			}
 			return candidates;
 		});
@@ -140,12 +206,58 @@ class CondomCore {
 		return component != null ? component.getPackageName() : intent.getPackage();
 	}
 
-	private boolean shouldBlockRequestTarget(final OutboundType type, final @Nullable Intent intent, final String target_pkg) {
+	/** @param outcome the outcome to count if blocked, while {@link Outcome#DRY_RUN_BLOCKED} is counted instead in dry-run mode. */
+	private boolean shouldBlockRequestTarget(final OutboundType type, final @Nullable Intent intent, final String target_pkg, final Outcome outcome) {
 		// Dry-run must be checked at the latest to ensure outbound judge is always called.
-		return mOutboundJudge != null && ! mOutboundJudge.shouldAllow(type, intent, target_pkg) && ! mDryRun;
+		if (judge(type, intent, target_pkg)) return false;
+		mStats.increment(type, mDryRun ? Outcome.DRY_RUN_BLOCKED : outcome);
+		return ! mDryRun;
+	}
+
+	private boolean shouldThrottle(final OutboundType type, final String target_pkg) {
+		final OutboundRateLimiter limiter = mRateLimiter;
+		if (limiter == null || limiter.tryAcquire(type, target_pkg)) return false;
+		mStats.increment(type, mDryRun ? Outcome.DRY_RUN_BLOCKED : Outcome.THROTTLED);
+		return ! mDryRun;
+	}
+
+	private boolean shouldQuarantine(final OutboundType type, final String target_pkg) {
+		final BurstQuarantine quarantine = mBurstQuarantine;
+		if (quarantine == null || (type != OutboundType.START_SERVICE && type != OutboundType.BIND_SERVICE && type != OutboundType.BROADCAST)) return false;
+		final int state = quarantine.count(target_pkg);
+		if (state == BurstQuarantine.PASS) return false;
+		if (state == BurstQuarantine.QUARANTINE_STARTED) mEventLog.write(CondomEvent.QUARANTINE, mTag, target_pkg, type.name(), null);
+		mStats.increment(type, mDryRun ? Outcome.DRY_RUN_BLOCKED : Outcome.QUARANTINED);
+		return ! mDryRun;
+	}
+
+	/**
+	 * Must be called in the procedure of {@link #proceed}, after the request is allowed.
+	 *
+	 * @param permission the receiver permission of broadcast, if any.
+	 * @return whether the request is deferred until the startup quiet period closes, in which case the procedure should not proceed.
+	 */
+	boolean deferDuringStartup(final OutboundType type, final Intent intent, final @Nullable String permission, final StartupQuietPeriod.Replay replay) {
+		final StartupQuietPeriod quiet_period = mStartupQuietPeriod;
+		if (quiet_period == null || mDryRun) return false;
+		if (type == OutboundType.START_SERVICE && intent.getComponent() == null) return false;	// The target component must be returned to caller.
+		if (mBase.getPackageName().equals(getTargetPackage(intent))) return false;
+		if (! quiet_period.defer(type, intent, permission, replay)) return false;
+		mStats.increment(type, Outcome.DEFERRED);
+		return true;
+	}
+
+	boolean hasOutboundJudge() { return mOutboundJudge != null || mOutboundPolicy != null; }
+
+	private boolean judge(final OutboundType type, final @Nullable Intent intent, final String target_pkg) {
+		if (mOutboundPolicy != null && ! mOutboundPolicy.shouldAllow(type, intent, target_pkg)) return false;
+		final OutboundJudge judge = mOutboundJudge;
+		if (judge == null) return true;
+		final OutboundJudgeCache cache = mOutboundJudgeCache;
+		return cache != null ? cache.shouldAllow(judge, type, intent, target_pkg) : judge.shouldAllow(type, intent, target_pkg);
 	}
 
-	@SuppressLint("WrongConstant") private int adjustIntentFlags(final OutboundType type, final Intent intent) {
+	@VisibleForTesting @SuppressLint("WrongConstant") int adjustIntentFlags(final OutboundType type, final Intent intent) {
 		final int original_flags = intent.getFlags();
 		if (mDryRun) return original_flags;
 		if (mExcludeBackgroundReceivers && (type == OutboundType.BROADCAST || type == OutboundType.QUERY_RECEIVERS))
@@ -158,23 +270,35 @@ class CondomCore {
 	@Nullable ResolveInfo filterCandidates(final OutboundType type, final Intent original_intent, final @Nullable List<ResolveInfo> candidates,
 										   final String tag, final boolean remove) {
 		if (candidates == null || candidates.isEmpty()) return null;
+		final long start = mLatency != null ? System.nanoTime() : 0;
+		try {
+			return doFilterCandidates(type, original_intent, candidates, tag, remove);
+		} finally {
+			addNestedOverhead(start);
+		}
+	}
 
+	private @Nullable ResolveInfo doFilterCandidates(final OutboundType type, final Intent original_intent, final List<ResolveInfo> candidates,
+													 final String tag, final boolean remove) {
 		final int my_uid = Process.myUid();
-		BackgroundUidFilter bg_uid_filter = null;
+		UidImportanceSnapshot uid_importance = null;
 		ResolveInfo match = null;
 		for (final Iterator<ResolveInfo> iterator = candidates.iterator(); iterator.hasNext(); match = null) {
 			final ResolveInfo candidate = iterator.next();
 			final ApplicationInfo app_info = candidate.serviceInfo.applicationInfo;
 			final int uid = app_info.uid;
 			if (uid == my_uid) match = candidate;        // Self UID is always allowed
-			else if (mOutboundJudge == null || mOutboundJudge.shouldAllow(type, original_intent, app_info.packageName)) {
+			else if (judge(type, original_intent, app_info.packageName)) {
 				if (mExcludeBackgroundServices) {
-					if (bg_uid_filter == null) bg_uid_filter = new BackgroundUidFilter();
-					if (bg_uid_filter.isUidNotBackground(uid)) match = candidate;
+					if (uid_importance == null) uid_importance = UidImportanceSnapshot.get(mBase);
+					if (uid_importance.isUidNotBackground(uid)) match = candidate;
 				} else match = candidate;
 			}
 
-			if (match == null) log(tag, CondomEvent.FILTER_BG_SERVICE, app_info.packageName, original_intent.toString());
+			if (match == null) {
+				mStats.increment(type, mDryRun ? Outcome.DRY_RUN_BLOCKED : Outcome.FILTERED_CANDIDATE);
+				mEventLog.write(CondomEvent.FILTER_BG_SERVICE, tag, app_info.packageName, null, original_intent);
+			}
 			if (mDryRun) return candidate;        // Always touch nothing and return the first candidate in dry-run mode.
 			if (remove) {
 				if (match == null) iterator.remove();
@@ -184,18 +308,28 @@ class CondomCore {
 	}
 
 	boolean shouldAllowProvider(final @Nullable ProviderInfo provider) {
-		if (provider == null) return true;		// We know nothing about the provider, better allow than block.
-		if (mBase.getPackageName().equals(provider.packageName)) return true;
-		if (shouldBlockRequestTarget(OutboundType.CONTENT, null, provider.packageName)) return false;
-		if (Settings.AUTHORITY.equals(provider.authority)) return true;	// Always allow access to system settings, to avoid rare cases in the wild that the provider info of Settings provider is inaccurate.
-		//noinspection SimplifiableIfStatement
-		if (SDK_INT >= HONEYCOMB_MR1 && mExcludeStoppedPackages
-				&& (provider.applicationInfo.flags & (FLAG_SYSTEM | ApplicationInfo.FLAG_STOPPED)) == ApplicationInfo.FLAG_STOPPED) return mDryRun;
+		if (provider == null) {		// We know nothing about the provider, better allow than block.
+			mStats.increment(OutboundType.CONTENT, Outcome.ALLOWED);
+			return true;
+		}
+		if (mBase.getPackageName().equals(provider.packageName)) {
+			mStats.increment(OutboundType.CONTENT, Outcome.SELF_TARGET);
+			return true;
+		}
+		if (shouldBlockRequestTarget(OutboundType.CONTENT, null, provider.packageName, Outcome.BLOCKED)) return false;
+		if (! Settings.AUTHORITY.equals(provider.authority)	// Always allow access to system settings, to avoid rare cases in the wild that the provider info of Settings provider is inaccurate.
+				&& SDK_INT >= HONEYCOMB_MR1 && mExcludeStoppedPackages
+				&& (provider.applicationInfo.flags & (FLAG_SYSTEM | ApplicationInfo.FLAG_STOPPED)) == ApplicationInfo.FLAG_STOPPED) {
+			mStats.increment(OutboundType.CONTENT, mDryRun ? Outcome.DRY_RUN_BLOCKED : Outcome.BLOCKED);
+			return mDryRun;
+		}
+		mStats.increment(OutboundType.CONTENT, Outcome.ALLOWED);
 		return true;
 	}
 
 	boolean shouldAllowProvider(final Context context, final String name, final int flags) {
-		return shouldAllowProvider(context.getPackageManager().resolveContentProvider(name, flags));
+		final ProviderResolutionCache cache = mProviderResolutionCache;
+		return shouldAllowProvider(cache != null ? cache.resolve(context, name, flags) : context.getPackageManager().resolveContentProvider(name, flags));
 	}
 
 	Object getSystemService(final String name) {
@@ -214,31 +348,29 @@ class CondomCore {
 		return mKitManager != null ? mKitManager.mSpoofPermissions : Collections.emptySet();
 	}
 
-	enum CondomEvent { CONCERN, BIND_PASS, START_PASS, FILTER_BG_SERVICE }
-
-	private void log(final String tag, final CondomEvent event, final String... args) {
-		final Object[] event_args = new Object[2 + args.length];
-		event_args[0] = mBase.getPackageName(); event_args[1] = tag;	// Package name and tag are shared parameters for all events.
-		System.arraycopy(args, 0, event_args, 2, args.length);
-		EventLog.writeEvent(EVENT_TAG + event.ordinal(), event_args);
-		if (DEBUG) Log.d(asLogTag(tag), event.name() + " " + Arrays.toString(args));
-	}
+	enum CondomEvent { CONCERN, BIND_PASS, START_PASS, FILTER_BG_SERVICE, CONCERN_SUPPRESSED, QUARANTINE, QUERY_VIOLATION }
 
 	void logConcern(final String tag, final String label) {
-		EventLog.writeEvent(EVENT_TAG + CondomEvent.CONCERN.ordinal(), mBase.getPackageName(), tag, label, getCaller());
+		final String caller = getCaller();		// Must be captured on current thread.
+		if (mConcernSampler != null && ! mConcernSampler.sample(tag, label, caller)) return;	// Counted and flushed later
+		mEventLog.write(CondomEvent.CONCERN, tag, label, caller, null);
 		if (DEBUG) Log.w(asLogTag(tag), label + " is invoked", new Throwable());
 	}
 
 	void logIfOutboundPass(final String tag, final Intent intent, final @Nullable String target_pkg, final CondomEvent event) {
 		if (target_pkg != null && ! mBase.getPackageName().equals(target_pkg))
-			log(tag, event, target_pkg, intent.toString());
+			mEventLog.write(event, tag, target_pkg, null, intent);
 	}
 
+	/** @return the first frame in stack outside condom and the platform (e.g. the proxy of system service and its framework API) */
 	private static String getCaller() {
-		final StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-		if (stack.length <= 5) return "<bottom>";
-		final StackTraceElement caller = stack[5];
-		return caller.getClassName() + "." + caller.getMethodName() + ":" + caller.getLineNumber();
+		for (final StackTraceElement frame : new Throwable().getStackTrace()) {
+			final String clazz = frame.getClassName();
+			if (clazz.startsWith("com.oasisfeng.condom.") || clazz.startsWith("android.") || clazz.startsWith("com.android.")
+					|| clazz.startsWith("java.") || clazz.startsWith("dalvik.") || clazz.startsWith("libcore.") || clazz.startsWith("$Proxy")) continue;
+			return clazz + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+		}
+		return "<bottom>";
 	}
 
 	static String buildLogTag(final String default_tag, final String prefix, final @Nullable String tag) {
@@ -251,11 +383,37 @@ class CondomCore {
 
 	CondomCore(final Context base, final CondomOptions options, final String tag) {
 		mBase = base;
+		mTag = tag;
 		DEBUG = (base.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
 		mExcludeBackgroundReceivers = options.mExcludeBackgroundReceivers;
 		mExcludeBackgroundServices = SDK_INT < O && options.mExcludeBackgroundServices;
 		mOutboundJudge = options.mOutboundJudge;
+		mOutboundJudgeCache = options.mOutboundJudgeCache;
+		mOutboundPolicy = options.mOutboundPolicy;
+		mProviderResolutionCache = options.mCacheProviderResolution ? ProviderResolutionCache.get() : null;
+		mPackageInfoCache = options.mPackageInfoCacheSize > 0 ? new PackageInfoCache(options.mPackageInfoCacheSize) : null;
+		mQueryResultCache = options.mCacheQueryResults ? new QueryResultCache() : null;
+		mPackageProbeGuard = options.mProbeStormThreshold > 0 ? new PackageProbeGuard(options.mProbeStormThreshold, options.mProbeStormWindow, tag) : null;
+		mInstalledPackagesRefreshInterval = options.mInstalledPackagesRefreshInterval;
+		mInstalledPackagesStrippedFlags = options.mInstalledPackagesStrippedFlags;
+		mFilterInstalledPackages = options.mFilterInstalledPackages;
+		mPackageFlagDowngrade = options.mStrippedPackageQueryFlags != 0 || ! options.mStrippedPackageQueryFlagsByPackage.isEmpty()
+				? new PackageFlagDowngrade(options.mStrippedPackageQueryFlags, new HashMap<>(options.mStrippedPackageQueryFlagsByPackage),
+				options.mSampleDowngradeSavings, tag) : null;
 		mDryRun = options.mDryRun;
+		mStartupQuietPeriod = options.mStartupWindow > 0 && ! mDryRun
+				? new StartupQuietPeriod(base, options.mStartupWindow, options.mStartupWindowUntilFirstActivityDrawn, tag) : null;
+		final long[] quarantine = options.mBurstQuarantine;
+		mBurstQuarantine = quarantine != null ? new BurstQuarantine((int) quarantine[0], quarantine[1], quarantine[2]) : null;
+		mServiceBindingPool = options.mPoolServiceBindings && ! mDryRun ? ServiceBindingPool.get() : null;
+		mReceiverMultiplexer = options.mMultiplexReceivers ? ReceiverMultiplexer.get() : null;
+		mCallbackHandler = options.mBackgroundCallbacks ? CallbackHandler.get(tag) : null;
+		mStartServiceCoalescer = options.mStartServiceCoalescingWindow > 0 ? new StartServiceCoalescer(options.mStartServiceCoalescingWindow) : null;
+		mRateLimiter = options.mRateLimits != null ? new OutboundRateLimiter(options.mRateLimits) : null;
+		mStats = CondomStats.getCounters(tag);
+		mLatency = options.mRecordLatency ? CondomStats.getHistograms(tag) : null;
+		mEventLog = new EventLogWriter(base.getPackageName(), DEBUG, options.mEventLogBufferSize, options.mDropEventsOnOverflow);
+		mConcernSampler = options.mConcernStackFirstN >= 0 ? new ConcernSampler(mEventLog, options.mConcernStackFirstN, options.mConcernStackSampleRate) : null;
 
 		final Lazy<PackageManager> lazy_pm = new Lazy<PackageManager>() { @Override protected PackageManager create() {
 			return new CondomPackageManager(CondomCore.this, base.getPackageManager(), tag);
@@ -264,8 +422,11 @@ class CondomCore {
 		mPackageManager = new Lazy<PackageManager>() { @Override protected PackageManager create() {
 			return pm_factory != null ? pm_factory.getPackageManager(base, lazy_pm.get()) : lazy_pm.get();
 		}};
+		final ContentQueryGuard query_guard = options.mGuardContentQueries
+				? new ContentQueryGuard(this, tag, options.mContentQueryMaxRows, options.mContentQueryAllowedColumns) : null;
+		final long notify_change_window = options.mNotifyChangeCoalescingWindow;
 		mContentResolver = new Lazy<ContentResolver>() { @Override protected ContentResolver create() {
-			return new CondomContentResolver(CondomCore.this, base, base.getContentResolver());
+			return new CondomContentResolver(CondomCore.this, base, base.getContentResolver(), notify_change_window, query_guard, tag);
 		}};
 
 		final List<CondomKit> kits = options.mKits == null ? null : new ArrayList<>(options.mKits);
@@ -280,12 +441,34 @@ class CondomCore {
 
 	final Context mBase;	// The real Context
 	final boolean DEBUG;
+	private final String mTag;
 
 	boolean mDryRun;
 	@VisibleForTesting @Nullable OutboundJudge mOutboundJudge;
+	private final @Nullable OutboundJudgeCache mOutboundJudgeCache;
+	private final @Nullable OutboundPolicy.Compiled mOutboundPolicy;
+	private final @Nullable OutboundRateLimiter mRateLimiter;
+	private final @Nullable StartupQuietPeriod mStartupQuietPeriod;
+	private final @Nullable BurstQuarantine mBurstQuarantine;
+	private final @Nullable StartServiceCoalescer mStartServiceCoalescer;
+	final @Nullable ServiceBindingPool mServiceBindingPool;
+	final @Nullable ReceiverMultiplexer mReceiverMultiplexer;
+	final @Nullable CallbackHandler mCallbackHandler;
 	boolean mExcludeStoppedPackages = true;
 	boolean mExcludeBackgroundReceivers;
 	boolean mExcludeBackgroundServices;
+	private final @Nullable ProviderResolutionCache mProviderResolutionCache;
+	final @Nullable PackageInfoCache mPackageInfoCache;
+	final @Nullable QueryResultCache mQueryResultCache;
+	final @Nullable PackageProbeGuard mPackageProbeGuard;
+	final @Nullable PackageFlagDowngrade mPackageFlagDowngrade;
+	final long mInstalledPackagesRefreshInterval;
+	final int mInstalledPackagesStrippedFlags;
+	final boolean mFilterInstalledPackages;
+	final CondomStats.Counters mStats;
+	private final @Nullable CondomStats.Histograms mLatency;
+	final EventLogWriter mEventLog;
+	private final @Nullable ConcernSampler mConcernSampler;
 	private final Lazy<PackageManager> mPackageManager;
 	private final Lazy<ContentResolver> mContentResolver;
 	private final @Nullable CondomKitManager mKitManager;
@@ -293,7 +476,10 @@ class CondomCore {
 	static final Function<ResolveInfo,String> SERVICE_PACKAGE_GETTER = resolve -> resolve.serviceInfo.packageName;
 	static final Function<ResolveInfo,String> RECEIVER_PACKAGE_GETTER = resolve -> resolve.activityInfo.packageName;
 
-	private static final int EVENT_TAG = "Condom".hashCode();
+	static final int EVENT_TAG = "Condom".hashCode();
+
+	/** Time spent in condom inside the procedure currently running on this thread, to be excluded from the downstream latency. */
+	private static final ThreadLocal<long[]> sNestedOverhead = new ThreadLocal<long[]>() { @Override protected long[] initialValue() { return new long[1]; } };
 
 	/** Mirror of the hidden Intent.FLAG_RECEIVER_EXCLUDE_BACKGROUND, since API level 24 (Android N) */
 	@RequiresApi(N) @VisibleForTesting static final int FLAG_RECEIVER_EXCLUDE_BACKGROUND = 0x00800000;
@@ -312,39 +498,6 @@ class CondomCore {
 		final Set<String> mSpoofPermissions = new HashSet<>();
 	}
 
-	class BackgroundUidFilter {
-
-		boolean isUidNotBackground(final int uid) {
-			if (running_processes != null) {
-				for (final ActivityManager.RunningAppProcessInfo running_process : running_processes)
-					if (running_process.pid != 0 && running_process.importance < IMPORTANCE_BACKGROUND && running_process.uid == uid)
-						return true;	// Same UID does not guarantee same process. This is spared intentionally.
-			} else if (running_services != null) {
-				for (final ActivityManager.RunningServiceInfo running_service : running_services)
-					if (running_service.pid != 0 && running_service.uid == uid)	// Same UID does not guarantee same process. This is spared intentionally.
-						return true;	// Only running process is qualified, although getRunningServices() may not include all running app processes.
-			}
-			return false;	// Fallback: Always treat as background app, since app with same UID will not reach here.
-		}
-
-		BackgroundUidFilter() {
-			final ActivityManager am = (ActivityManager) mBase.getSystemService(ACTIVITY_SERVICE);
-			if (am == null) {
-				running_services = null;
-				running_processes = null;
-			} else if (SDK_INT >= LOLLIPOP_MR1) {		// getRunningAppProcesses() is limited on Android 5.1+.
-				running_services = am.getRunningServices(64);	// Too many services are never healthy, thus ignored intentionally.
-				running_processes = null;
-			} else {
-				running_services = null;
-				running_processes = am.getRunningAppProcesses();
-			}
-		}
-
-		private final @Nullable List<ActivityManager.RunningServiceInfo> running_services;
-		private final @Nullable List<ActivityManager.RunningAppProcessInfo> running_processes;
-	}
-
 	class ReceiverRestrictedContext extends ContextWrapper {
 
 		ReceiverRestrictedContext(final Context base) {
@@ -25,7 +25,9 @@ import androidx.annotation.Nullable;
 import com.oasisfeng.condom.ext.PackageManagerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The options for condom initialization.
@@ -50,14 +52,259 @@ public class CondomOptions {
 	 */
 	public CondomOptions preventServiceInBackgroundPackages(final boolean prevent_or_not) { mExcludeBackgroundServices = prevent_or_not; return this; }
 
+	/**
+	 * Cache the resolution of content provider by authority, which is required for access control before every provider acquisition.
+	 * The cache is invalidated upon package changes. (default: false)
+	 */
+	public CondomOptions cacheContentProviderResolution(final boolean cache_or_not) { mCacheProviderResolution = cache_or_not; return this; }
+
+	/**
+	 * Detect the storm of probes for packages via {@link PackageManager#getPackageInfo(String, int)} and {@link PackageManager#getApplicationInfo(String, int)}
+	 * of {@link CondomContext#getPackageManager()}, which is at least <code>threshold</code> probes within the window. Once detected,
+	 * installed packages are fetched in bulk at once, and the subsequent probes for missing packages fail without IPC, for one window
+	 * or until packages change.
+	 * (default: disabled)
+	 *
+	 * @see CondomStats#getPackageProbes(String)
+	 */
+	public CondomOptions prefetchOnProbeStorm(final int threshold, final long window_millis) {
+		if (threshold <= 0 || window_millis <= 0) throw new IllegalArgumentException("Non-positive value");
+		mProbeStormThreshold = threshold; mProbeStormWindow = window_millis; return this;
+	}
+
+	/**
+	 * Strip the specified flags (e.g. {@link PackageManager#GET_SIGNATURES}, {@link PackageManager#GET_META_DATA}) from
+	 * {@link PackageManager#getPackageInfo(String, int)} and {@link PackageManager#getApplicationInfo(String, int)} of {@link CondomContext#getPackageManager()},
+	 * as well as {@code IPackageManager.getPackageInfo()} if {@link CondomProcess} is installed, to reduce the size of binder parcel,
+	 * for SDKs querying heavy details of packages they only check for existence. (default: none)
+	 *
+	 * @see #downgradePackageQueryFlags(String, int)
+	 * @see CondomStats#getBytesSavedByDowngrade(String)
+	 */
+	public CondomOptions downgradePackageQueryFlags(final int stripped_flags) { mStrippedPackageQueryFlags = stripped_flags; return this; }
+
+	/** Same as {@link #downgradePackageQueryFlags(int)}, but only for the specified target package, overriding the flags for all packages. */
+	public CondomOptions downgradePackageQueryFlags(final String pkg, final int stripped_flags) {
+		mStrippedPackageQueryFlagsByPackage.put(pkg, stripped_flags); return this;
+	}
+
+	/**
+	 * Debug only: estimate the bytes saved by {@link #downgradePackageQueryFlags(int)}, by fetching the full result (bypassing any cache)
+	 * along with the downgraded one once in a while. This costs extra IPC, thus should not be enabled in production. (default: false)
+	 *
+	 * @see CondomStats#getBytesSavedByDowngrade(String)
+	 */
+	public CondomOptions sampleDowngradeSavings(final boolean sample_or_not) { mSampleDowngradeSavings = sample_or_not; return this; }
+
+	/**
+	 * Serve {@link PackageManager#getInstalledPackages(int)} and {@link PackageManager#getInstalledApplications(int)} of {@link CondomContext#getPackageManager()}
+	 * from a process-wide snapshot, which is refreshed at most once per interval, only if packages have changed since last fetch
+	 * (or periodically if package changes could not be monitored). The specified flags are stripped from the query. (default: disabled)
+	 *
+	 * @param refresh_interval_millis the minimal interval between two fetches for the same flags, which is also the maximal staleness of result.
+	 * @param stripped_flags the heavy flags (e.g. {@link PackageManager#GET_META_DATA}) to strip from the query, to reduce the size of snapshot.
+	 */
+	public CondomOptions throttleInstalledPackages(final long refresh_interval_millis, final int stripped_flags) {
+		if (refresh_interval_millis < 0) throw new IllegalArgumentException("Negative interval");
+		mInstalledPackagesRefreshInterval = refresh_interval_millis; mInstalledPackagesStrippedFlags = stripped_flags; return this;
+	}
+
+	/**
+	 * Filter the results of {@link PackageManager#getInstalledPackages(int)} and {@link PackageManager#getInstalledApplications(int)}
+	 * of {@link CondomContext#getPackageManager()} by the outbound judge or policy, as {@link OutboundType#QUERY_PACKAGES}. (default: false)
+	 */
+	public CondomOptions filterInstalledPackages(final boolean filter_or_not) { mFilterInstalledPackages = filter_or_not; return this; }
+
+	/**
+	 * Cache the raw results of {@link PackageManager#queryIntentServices(Intent, int)}, {@link PackageManager#queryBroadcastReceivers(Intent, int)}
+	 * and {@link PackageManager#resolveService(Intent, int)} via {@link CondomContext#getPackageManager()}, keyed by the filter of intent,
+	 * intent flags and query flags. Outbound judge and policy are still applied to cached results on every call. The cache is invalidated
+	 * upon package changes. (default: false)
+	 */
+	public CondomOptions cacheQueryResults(final boolean cache_or_not) { mCacheQueryResults = cache_or_not; return this; }
+
+	/**
+	 * Cache the results of {@link PackageManager#getPackageInfo(String, int)} and {@link PackageManager#getApplicationInfo(String, int)}
+	 * via {@link CondomContext#getPackageManager()}, keyed by package name and flags. The cache is invalidated upon package changes,
+	 * and returns a copy each time. Outbound judge and policy are still applied on every call. (default: disabled)
+	 *
+	 * @param max_entries the maximal number of entries to cache, or 0 to disable.
+	 */
+	public CondomOptions cachePackageInfo(final int max_entries) {
+		if (max_entries < 0) throw new IllegalArgumentException("Negative max_entries");
+		mPackageInfoCacheSize = max_entries; return this;
+	}
+
 	/** Set a custom judge for the explicit target package of outbound service and broadcast requests. */
 	public CondomOptions setOutboundJudge(final OutboundJudge judge) { mOutboundJudge = judge; return this; }
 
+	/**
+	 * Cache the verdicts of outbound judge, to avoid calling it repeatedly for the same target. (default: none)
+	 *
+	 * <p>The cache instance is held by caller for explicit invalidation and statistics.
+	 */
+	public CondomOptions setOutboundJudgeCache(final @Nullable OutboundJudgeCache cache) { mOutboundJudgeCache = cache; return this; }
+
+	/**
+	 * Set declarative rules for the target package of outbound requests, which are compiled into lookup tables at once.
+	 * If outbound judge is also set, outbound request will only be allowed if both of them allow it.
+	 */
+	public CondomOptions setOutboundPolicy(final @Nullable OutboundPolicy policy) { mOutboundPolicy = policy != null ? policy.compile() : null; return this; }
+
 	public CondomOptions setPackageManagerFactory(final PackageManagerFactory factory) { mPackageManagerFactory = factory; return this; }
 
+	/**
+	 * Limit the rate of outbound requests to each target package, with a token bucket allowing bursts of up to <code>max_requests</code>
+	 * and refilled at <code>max_requests</code> per <code>period_millis</code>. Throttled requests are rejected just like blocked ones,
+	 * except in dry-run mode. Self-targeting requests are never throttled. (default: no limit)
+	 *
+	 * @param types the outbound types to limit, or all types if none specified. Each type is limited separately.
+	 */
+	public CondomOptions limitOutboundRate(final int max_requests, final long period_millis, final OutboundType... types) {
+		if (max_requests <= 0 || period_millis <= 0) throw new IllegalArgumentException("Non-positive limit");
+		if (mRateLimits == null) mRateLimits = new long[OutboundType.values().length][];
+		for (final OutboundType type : types.length > 0 ? types : OutboundType.values())
+			mRateLimits[type.ordinal()] = new long[] { max_requests, period_millis };
+		return this;
+	}
+
+	/**
+	 * Coalesce requests to start service with intent equal in {@link Intent#filterEquals(Intent) filterEquals()} (extras are not compared)
+	 * within the window since the last one actually started. Coalesced requests return the previously started component directly.
+	 * Requests to start service in current package are never coalesced. (default: disabled)
+	 */
+	public CondomOptions coalesceStartService(final long window_millis) {
+		if (window_millis <= 0) throw new IllegalArgumentException("Non-positive window");
+		mStartServiceCoalescingWindow = window_millis; return this;
+	}
+
+	/**
+	 * Quarantine the target package for a cool-down period, if it receives more than <code>threshold</code> requests to start or bind service
+	 * or explicit broadcasts within the sliding window. Requests to quarantined package are rejected just like blocked ones, except in dry-run mode.
+	 * A quarantine event is written to EventLog when it starts. (default: disabled)
+	 */
+	public CondomOptions quarantineBurstingPackages(final int threshold, final long window_millis, final long cooldown_millis) {
+		if (threshold <= 0 || window_millis <= 0 || cooldown_millis <= 0) throw new IllegalArgumentException("Non-positive value");
+		mBurstQuarantine = new long[] { threshold, window_millis, cooldown_millis }; return this;
+	}
+
+	/**
+	 * Hold allowed requests to start explicit service or send broadcast (without result receiver) during the startup window,
+	 * and replay them on a background thread once the window closes. Duplicate requests are coalesced. (default: disabled)
+	 *
+	 * <p>Not applicable in dry-run mode. The window starts when the condom is created, which should be in {@link android.app.Application#onCreate()}.
+	 *
+	 * @param window_millis the maximal length of the startup window.
+	 * @param until_first_activity_drawn close the window earlier once the first activity is drawn.
+	 */
+	public CondomOptions deferDuringStartup(final long window_millis, final boolean until_first_activity_drawn) {
+		if (window_millis <= 0) throw new IllegalArgumentException("Non-positive window");
+		mStartupWindow = window_millis; mStartupWindowUntilFirstActivityDrawn = until_first_activity_drawn; return this;
+	}
+
+	/**
+	 * Share one real binding among connections binding to the same explicit service with equal intent (extras are not compared) and flags
+	 * in current process. The callbacks of the real binding are fanned out to all of them, and the service is only unbound after
+	 * the last one unbinds. (default: false)
+	 *
+	 * <p>Only applicable to {@link android.content.Context#bindService(Intent, android.content.ServiceConnection, int)} of {@link CondomContext},
+	 * not in dry-run mode.
+	 */
+	public CondomOptions poolServiceBindings(final boolean pool_or_not) { mPoolServiceBindings = pool_or_not; return this; }
+
+	/**
+	 * Share one real registration among runtime receivers registered with identical filter (actions, categories and priority),
+	 * permission, scheduler and flags in current process, with broadcasts fanned out in-process. Filters with data specified are not shared.
+	 * (default: false)
+	 *
+	 * <p>Only enable this if receivers registered via {@link CondomContext} never call {@link android.content.BroadcastReceiver#goAsync()}
+	 * or APIs of ordered broadcast, which do not work for receivers sharing registration.
+	 */
+	public CondomOptions multiplexReceivers(final boolean multiplex_or_not) { mMultiplexReceivers = multiplex_or_not; return this; }
+
+	/**
+	 * Share one real observer among content observers registered with the same URI, <code>notifyForDescendants</code> and user in current process,
+	 * with changes fanned out in-process. (default: false)
+	 *
+	 * <p>Only applicable to {@link CondomProcess}, since {@code ContentResolver.registerContentObserver()} is final and cannot be intercepted by {@link CondomContext}.
+	 * Changes are fanned out on the background thread if {@link #dispatchCallbacksInBackground(boolean)} is also enabled.
+	 */
+	public CondomOptions multiplexContentObservers(final boolean multiplex_or_not) { mMultiplexContentObservers = multiplex_or_not; return this; }
+
+	/**
+	 * Coalesce notifications of content change via {@link CondomContext#getContentResolver()} with equal arguments within the window,
+	 * and notify only once on a background thread after the window closes. If the window is 0, notifications are coalesced within
+	 * the current looper message, and notified on the same looper. (default: disabled)
+	 *
+	 * @param window_millis the window in milliseconds, or 0 for the current looper message, or negative to disable.
+	 * @see CondomStats#getMergedNotifications(String)
+	 */
+	public CondomOptions coalesceNotifyChange(final long window_millis) { mNotifyChangeCoalescingWindow = window_millis; return this; }
+
+	/**
+	 * Measure the row count, window fills and latency of queries via {@link CondomContext#getContentResolver()}, per authority. (default: false)
+	 *
+	 * @see CondomStats#getQueryStats(String, String)
+	 */
+	public CondomOptions monitorContentQueries(final boolean monitor_or_not) { mGuardContentQueries = monitor_or_not; return this; }
+
+	/**
+	 * Limit queries via {@link CondomContext#getContentResolver()}, with queries also measured as {@link #monitorContentQueries(boolean)}.
+	 * Each violation is written to EventLog. Rows beyond the limit are invisible in the returned cursor, and queries with projection
+	 * not allowed return null, except in dry-run mode.
+	 *
+	 * @param max_rows the maximal number of rows returned by each query, or 0 for unlimited.
+	 * @param allowed_columns the columns allowed in projection, or null for no restriction. Query with null projection (all columns) is not allowed if set.
+	 */
+	public CondomOptions limitContentQueries(final int max_rows, final @Nullable String[] allowed_columns) {
+		if (max_rows < 0) throw new IllegalArgumentException("Negative max_rows");
+		mGuardContentQueries = true; mContentQueryMaxRows = max_rows; mContentQueryAllowedColumns = allowed_columns; return this;
+	}
+
+	/**
+	 * Dispatch callbacks on a condom-owned background thread instead of the main thread, including runtime receivers registered
+	 * via {@link CondomContext} without scheduler, and service connections bound via {@link CondomContext} on Android Q+. (default: false)
+	 *
+	 * <p>Only enable this if those callbacks are not bound to the main thread (e.g. touching UI).
+	 *
+	 * @see CondomStats#getCallbackLatency(String, CondomStats.CallbackLatency)
+	 */
+	public CondomOptions dispatchCallbacksInBackground(final boolean background_or_not) { mBackgroundCallbacks = background_or_not; return this; }
+
 	/** Set to dry-run mode to inspect the outbound wake-up only, no outbound requests will be actually blocked. */
 	public CondomOptions setDryRun(final boolean dry_run) { mDryRun = dry_run; return this; }
 
+	/**
+	 * Write events to EventLog asynchronously in batches on a background thread, instead of on the calling thread. (default: disabled)
+	 *
+	 * @param buffer_size the number of events to buffer before written, or 0 to write synchronously.
+	 * @param drop_on_overflow whether to drop events when buffer is full, otherwise they are written synchronously.
+	 */
+	public CondomOptions writeEventLogAsync(final int buffer_size, final boolean drop_on_overflow) {
+		if (buffer_size < 0) throw new IllegalArgumentException("Negative buffer size");
+		mEventLogBufferSize = buffer_size; mDropEventsOnOverflow = drop_on_overflow; return this;
+	}
+
+	/**
+	 * Log the invocation of concerned API (e.g. {@link android.content.Context#getBaseContext()}) only for the first N invocations
+	 * from each call site (the caller of each API per tag), and then one in every M invocations. The rest are counted and logged
+	 * periodically in aggregate. (default: always log)
+	 *
+	 * @param first_n the number of invocations from each call site to always log.
+	 * @param sample_rate log one in every <code>sample_rate</code> invocations after the first N, or 0 to never log.
+	 */
+	public CondomOptions sampleConcernStacks(final int first_n, final int sample_rate) {
+		if (first_n < 0 || sample_rate < 0) throw new IllegalArgumentException("Negative value");
+		mConcernStackFirstN = first_n; mConcernStackSampleRate = sample_rate; return this;
+	}
+
+	/**
+	 * Record latency histograms of outbound requests, separating the overhead of condom from the downstream call. (default: false)
+	 *
+	 * @see CondomStats#getLatency(String, OutboundType, CondomStats.Latency)
+	 */
+	public CondomOptions recordLatency(final boolean record_or_not) { mRecordLatency = record_or_not; return this; }
+
 	public CondomOptions addKit(final CondomKit kit) {
 		if (mKits == null) mKits = new ArrayList<>();
 		mKits.add(kit);
@@ -66,8 +313,39 @@ public class CondomOptions {
 
 	boolean mDryRun;
 	@Nullable OutboundJudge mOutboundJudge;
+	@Nullable OutboundJudgeCache mOutboundJudgeCache;
+	@Nullable OutboundPolicy.Compiled mOutboundPolicy;
 	@Nullable PackageManagerFactory mPackageManagerFactory;
 	boolean mExcludeBackgroundReceivers = true;
 	boolean mExcludeBackgroundServices = true;
+	boolean mCacheProviderResolution;
+	int mPackageInfoCacheSize;
+	boolean mCacheQueryResults;
+	int mProbeStormThreshold;
+	long mProbeStormWindow;
+	int mStrippedPackageQueryFlags;
+	long mInstalledPackagesRefreshInterval = -1;
+	int mInstalledPackagesStrippedFlags;
+	boolean mFilterInstalledPackages;
+	final Map<String, Integer> mStrippedPackageQueryFlagsByPackage = new HashMap<>();
+	boolean mSampleDowngradeSavings;
+	int mEventLogBufferSize;
+	boolean mDropEventsOnOverflow;
+	int mConcernStackFirstN = -1;		// Negative for always
+	int mConcernStackSampleRate;
+	boolean mRecordLatency;
+	long mStartServiceCoalescingWindow;
+	boolean mPoolServiceBindings;
+	boolean mMultiplexReceivers;
+	boolean mMultiplexContentObservers;
+	long mNotifyChangeCoalescingWindow = -1;
+	boolean mGuardContentQueries;
+	int mContentQueryMaxRows;
+	@Nullable String[] mContentQueryAllowedColumns;
+	boolean mBackgroundCallbacks;
+	@Nullable long[] mBurstQuarantine;	// { threshold, window_millis, cooldown_millis }
+	long mStartupWindow;
+	boolean mStartupWindowUntilFirstActivityDrawn;
+	@Nullable long[][] mRateLimits;		// { max_requests, period_millis } indexed by the ordinal of OutboundType
 	@Nullable List<CondomKit> mKits;
 }
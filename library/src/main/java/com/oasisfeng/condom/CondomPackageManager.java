@@ -30,6 +30,7 @@ import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static android.os.Build.VERSION.SDK_INT;
@@ -46,7 +47,9 @@ class CondomPackageManager extends PackageManagerWrapper {
 	@Override public @NonNull List<ResolveInfo> queryBroadcastReceivers(final Intent intent, final int flags) {
 		return mCondom.proceedQuery(OutboundType.QUERY_RECEIVERS, intent, new CondomCore.WrappedValueProcedure<List<ResolveInfo>>() {
 			@Override public List<ResolveInfo> proceed() {
-				return CondomPackageManager.super.queryBroadcastReceivers(intent, flags);
+				return query(QueryResultCache.QUERY_RECEIVERS, intent, flags, new QueryResultCache.Loader() { @Override public List<ResolveInfo> load() {
+					return CondomPackageManager.super.queryBroadcastReceivers(intent, flags);
+				}});
 			}
 		}, CondomCore.RECEIVER_PACKAGE_GETTER);
 	}
@@ -55,7 +58,7 @@ class CondomPackageManager extends PackageManagerWrapper {
 		final int original_intent_flags = intent.getFlags();
 		return mCondom.proceedQuery(OutboundType.QUERY_SERVICES, intent, new CondomCore.WrappedValueProcedure<List<ResolveInfo>>() {
 			@Override public List<ResolveInfo> proceed() {
-				final List<ResolveInfo> result = CondomPackageManager.super.queryIntentServices(intent, flags);
+				final List<ResolveInfo> result = queryIntentServicesMaybeCached(intent, flags);
 				mCondom.filterCandidates(OutboundType.QUERY_SERVICES, intent.setFlags(original_intent_flags), result, TAG, true);
 				return result;
 			}
@@ -67,36 +70,110 @@ class CondomPackageManager extends PackageManagerWrapper {
 		// Intent flags could only filter background receivers, we have to deal with services by ourselves.
 		return mCondom.proceed(OutboundType.QUERY_SERVICES, intent, null, new CondomCore.WrappedValueProcedure<ResolveInfo>() {
 			@Override public ResolveInfo proceed() {
-				if (! mCondom.mExcludeBackgroundServices && mCondom.mOutboundJudge == null)
-					return CondomPackageManager.super.resolveService(intent, flags);    // Shortcut for pass-through
+				if (! mCondom.mExcludeBackgroundServices && ! mCondom.hasOutboundJudge()) {    // Shortcut for pass-through
+					if (mCondom.mQueryResultCache == null) return CondomPackageManager.super.resolveService(intent, flags);
+					final List<ResolveInfo> result = query(QueryResultCache.RESOLVE_SERVICE, intent, flags, new QueryResultCache.Loader() { @Override public List<ResolveInfo> load() {
+						final ResolveInfo resolved = CondomPackageManager.super.resolveService(intent, flags);
+						return resolved != null ? Collections.singletonList(resolved) : Collections.<ResolveInfo>emptyList();
+					}});
+					return result.isEmpty() ? null : result.get(0);
+				}
 
-				final List<ResolveInfo> candidates = CondomPackageManager.super.queryIntentServices(intent, flags);
+				final List<ResolveInfo> candidates = queryIntentServicesMaybeCached(intent, flags);
 				final Intent original_intent = intent.setFlags(original_intent_flags);    // Restore the intent flags early before getFirstMatch().
 				return mCondom.filterCandidates(OutboundType.QUERY_SERVICES, original_intent, candidates, TAG, false);
 			}
 		});
 	}
 
+	private List<ResolveInfo> queryIntentServicesMaybeCached(final Intent intent, final int flags) {
+		return query(QueryResultCache.QUERY_SERVICES, intent, flags, new QueryResultCache.Loader() { @Override public List<ResolveInfo> load() {
+			return CondomPackageManager.super.queryIntentServices(intent, flags);
+		}});
+	}
+
+	/** Query via the cache if enabled. The result is always a new list if cached, which is safe to be filtered in place. */
+	private List<ResolveInfo> query(final int kind, final Intent intent, final int flags, final QueryResultCache.Loader loader) {
+		final QueryResultCache cache = mCondom.mQueryResultCache;
+		return cache != null ? cache.get(mCondom.mBase, kind, intent, flags, loader) : loader.load();
+	}
+
 	@Override public ProviderInfo resolveContentProvider(final String name, final int flags) {
 		final ProviderInfo provider = super.resolveContentProvider(name, flags);
 		if (! mCondom.shouldAllowProvider(provider)) return null;
 		return provider;
 	}
 
+	private ApplicationInfo getApplicationInfoMaybeCached(final String pkg, final int flags) throws NameNotFoundException {
+		final PackageInfoCache cache = mCondom.mPackageInfoCache;
+		if (cache == null) return super.getApplicationInfo(pkg, flags);
+		return cache.getApplicationInfo(mCondom.mBase, pkg, flags, new PackageInfoCache.Loader<ApplicationInfo>() {
+			@Override public ApplicationInfo load() throws NameNotFoundException { return CondomPackageManager.super.getApplicationInfo(pkg, flags); }
+		});
+	}
+
+	private PackageInfo getPackageInfoMaybeCached(final String pkg, final int flags) throws NameNotFoundException {
+		final PackageInfoCache cache = mCondom.mPackageInfoCache;
+		if (cache == null) return super.getPackageInfo(pkg, flags);
+		return cache.getPackageInfo(mCondom.mBase, pkg, flags, new PackageInfoCache.Loader<PackageInfo>() {
+			@Override public PackageInfo load() throws NameNotFoundException { return CondomPackageManager.super.getPackageInfo(pkg, flags); }
+		});
+	}
+
+	private boolean isKnownMissing(final String pkg, final int flags) {
+		final PackageProbeGuard guard = mCondom.mPackageProbeGuard;
+		return guard != null && guard.isKnownMissing(mCondom.mBase, pkg, flags, new InstalledPackagesSnapshot.Loader() {
+			@Override public List<PackageInfo> load() { return CondomPackageManager.super.getInstalledPackages(0); }
+		});
+	}
+
 	@Override public @NonNull List<PackageInfo> getInstalledPackages(final int flags) {
 		mCondom.logConcern(TAG, "PackageManager.getInstalledPackages");
-		return super.getInstalledPackages(flags);
+		final long interval = mCondom.mInstalledPackagesRefreshInterval;
+		if (interval < 0 && ! mCondom.mFilterInstalledPackages) return super.getInstalledPackages(flags);
+		final List<PackageInfo> list = filterInstalled(new CondomCore.WrappedValueProcedure<List<PackageInfo>>() { @Override public List<PackageInfo> proceed() {
+			if (interval < 0) return new ArrayList<>(CondomPackageManager.super.getInstalledPackages(flags));
+			return InstalledPackagesSnapshot.get().getInstalledPackages(mCondom.mBase, flags & ~ mCondom.mInstalledPackagesStrippedFlags, interval,
+					new InstalledPackagesSnapshot.ListLoader<PackageInfo>() { @Override public List<PackageInfo> load(final int snapshot_flags) {
+						return CondomPackageManager.super.getInstalledPackages(snapshot_flags);
+					}});
+		}}, PACKAGE_INFO_PACKAGE_GETTER);
+		return interval < 0 || list == null ? list : InstalledPackagesSnapshot.copy(list, PackageInfo.CREATOR);	// Copied after filtering
 	}
 
 	@Override public @NonNull List<ApplicationInfo> getInstalledApplications(final int flags) {
 		mCondom.logConcern(TAG, "PackageManager.getInstalledApplications");
-		return super.getInstalledApplications(flags);
+		final long interval = mCondom.mInstalledPackagesRefreshInterval;
+		if (interval < 0 && ! mCondom.mFilterInstalledPackages) return super.getInstalledApplications(flags);
+		final List<ApplicationInfo> list = filterInstalled(new CondomCore.WrappedValueProcedure<List<ApplicationInfo>>() { @Override public List<ApplicationInfo> proceed() {
+			if (interval < 0) return new ArrayList<>(CondomPackageManager.super.getInstalledApplications(flags));
+			return InstalledPackagesSnapshot.get().getInstalledApplications(mCondom.mBase, flags & ~ mCondom.mInstalledPackagesStrippedFlags, interval,
+					new InstalledPackagesSnapshot.ListLoader<ApplicationInfo>() { @Override public List<ApplicationInfo> load(final int snapshot_flags) {
+						return CondomPackageManager.super.getInstalledApplications(snapshot_flags);
+					}});
+		}}, APPLICATION_INFO_PACKAGE_GETTER);
+		return interval < 0 || list == null ? list : InstalledPackagesSnapshot.copy(list, ApplicationInfo.CREATOR);	// Copied after filtering
+	}
+
+	/** @param procedure must return a modifiable list. */
+	private <T> List<T> filterInstalled(final CondomCore.WrappedValueProcedure<List<T>> procedure, final CondomCore.Function<T, String> pkg_getter) {
+		if (! mCondom.mFilterInstalledPackages) return procedure.proceed();
+		return mCondom.proceedQuery(OutboundType.QUERY_PACKAGES, null, procedure, pkg_getter);
 	}
 
 	@Override public @NonNull ApplicationInfo getApplicationInfo(final String pkg, final int flags) throws NameNotFoundException {
 		return mCondom.proceed(OutboundType.GET_APPLICATION_INFO, pkg, null, new CondomCore.WrappedValueProcedureThrows<ApplicationInfo, NameNotFoundException>() {
 			@Override public ApplicationInfo proceed() throws NameNotFoundException {
-				return CondomPackageManager.super.getApplicationInfo(pkg, flags);
+				if (isKnownMissing(pkg, flags)) throw new NameNotFoundException(pkg);
+				final PackageFlagDowngrade downgrade = mCondom.mPackageFlagDowngrade;
+				if (downgrade == null) return getApplicationInfoMaybeCached(pkg, flags);
+				return downgrade.load(pkg, flags, new PackageFlagDowngrade.Loader<ApplicationInfo, NameNotFoundException>() {
+					@Override public ApplicationInfo load(final int flags) throws NameNotFoundException { return getApplicationInfoMaybeCached(pkg, flags); }
+				}, new PackageFlagDowngrade.Loader<ApplicationInfo, NameNotFoundException>() {
+					@Override public ApplicationInfo load(final int flags) throws NameNotFoundException {
+						return CondomPackageManager.super.getApplicationInfo(pkg, flags);
+					}
+				});
 			}
 		});
 	}
@@ -104,7 +181,14 @@ class CondomPackageManager extends PackageManagerWrapper {
 	@Override public PackageInfo getPackageInfo(final String pkg, final int flags) throws NameNotFoundException {
 		final PackageInfo info = mCondom.proceed(OutboundType.GET_PACKAGE_INFO, pkg, null, new CondomCore.WrappedValueProcedureThrows<PackageInfo, NameNotFoundException>() {
 			@Override public PackageInfo proceed() throws NameNotFoundException {
-				return CondomPackageManager.super.getPackageInfo(pkg, flags);
+				if (isKnownMissing(pkg, flags)) throw new NameNotFoundException(pkg);
+				final PackageFlagDowngrade downgrade = mCondom.mPackageFlagDowngrade;
+				if (downgrade == null) return getPackageInfoMaybeCached(pkg, flags);
+				return downgrade.load(pkg, flags, new PackageFlagDowngrade.Loader<PackageInfo, NameNotFoundException>() {
+					@Override public PackageInfo load(final int flags) throws NameNotFoundException { return getPackageInfoMaybeCached(pkg, flags); }
+				}, new PackageFlagDowngrade.Loader<PackageInfo, NameNotFoundException>() {
+					@Override public PackageInfo load(final int flags) throws NameNotFoundException { return CondomPackageManager.super.getPackageInfo(pkg, flags); }
+				});
 			}
 		});
 		if (info == null) throw new NameNotFoundException(pkg);
@@ -161,6 +245,12 @@ class CondomPackageManager extends PackageManagerWrapper {
 
 	private final CondomCore mCondom;
 	private final String TAG;
+	private static final CondomCore.Function<PackageInfo,String> PACKAGE_INFO_PACKAGE_GETTER = new CondomCore.Function<PackageInfo, String>() {
+		@Override public String apply(final PackageInfo info) { return info.packageName; }
+	};
+	private static final CondomCore.Function<ApplicationInfo,String> APPLICATION_INFO_PACKAGE_GETTER = new CondomCore.Function<ApplicationInfo, String>() {
+		@Override public String apply(final ApplicationInfo info) { return info.packageName; }
+	};
 	private static final CondomCore.Function<String,String> IDENTITY_FUNCTION = new CondomCore.Function<String, String>() {
 		@Override public String apply(final String s) { return s; }
 	};
@@ -21,6 +21,7 @@ import android.annotation.SuppressLint;
 import android.app.ActivityManager;
 import android.app.Application;
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
@@ -30,11 +31,17 @@ import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Parcel;
 import android.os.Process;
+import android.os.UserHandle;
 import android.util.Log;
 import androidx.annotation.Keep;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.annotation.VisibleForTesting;
 
 import java.lang.reflect.Field;
@@ -42,9 +49,15 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static android.content.pm.PackageManager.GET_ACTIVITIES;
@@ -55,6 +68,7 @@ import static android.os.Build.VERSION.SDK_INT;
 import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR1;
 import static android.os.Build.VERSION_CODES.O;
 import static android.os.Build.VERSION_CODES.Q;
+import static android.os.Build.VERSION_CODES.R;
 
 /**
  * Process-level condom
@@ -171,6 +185,7 @@ public class CondomProcess {
 		try {
 			installCondomProcessActivityManager(condom);
 			installCondomProcessPackageManager(condom);
+			if (options.mMultiplexContentObservers) installCondomProcessContentService(condom);
 			Log.d(TAG, "Global condom is installed in current process");
 		} catch (final Exception e) {
 			condom.logConcern(TAG_INCOMPATIBILITY, e.getMessage());
@@ -207,7 +222,7 @@ public class CondomProcess {
 			((CondomProcessActivityManager) handler).mCondom = condom;
 		} else {
 			final Object condom_am = Proxy.newProxyInstance(condom.mBase.getClassLoader(), new Class[] { IActivityManager },
-					new CondomProcessActivityManager(condom, am));
+					new CondomProcessActivityManager(condom, IActivityManager, am));
 			Singleton_mInstance.set(singleton, condom_am);
 		}
 	}
@@ -226,11 +241,31 @@ public class CondomProcess {
 			((CondomProcessPackageManager) handler).mCondom = condom;
 		} else {
 			final Object condom_pm = Proxy.newProxyInstance(condom.mBase.getClassLoader(), new Class[] { IPackageManager },
-					new CondomProcessPackageManager(condom, pm));
+					new CondomProcessPackageManager(condom, IPackageManager, pm));
 			ActivityThread_sPackageManager.set(null, condom_pm);
 		}
 	}
 
+	@SuppressLint({"PrivateApi", "DiscouragedPrivateApi"}) private static void installCondomProcessContentService(final CondomCore condom)
+			throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+		final Method ContentResolver_getContentService = ContentResolver.class.getDeclaredMethod("getContentService");
+		final Field ContentResolver_sContentService = ContentResolver.class.getDeclaredField("sContentService");
+		ContentResolver_sContentService.setAccessible(true);
+		final Class<?> IContentService = Class.forName("android.content.IContentService");
+
+		final Object cs = ContentResolver_getContentService.invoke(null);		// Also initialize ContentResolver.sContentService
+		if (cs == null) throw new IllegalStateException("ContentResolver.getContentService() returns null");
+		final InvocationHandler handler;
+		if (Proxy.isProxyClass(cs.getClass()) && (handler = Proxy.getInvocationHandler(cs)) instanceof CondomProcessContentService) {
+			Log.w(TAG, "CondomContentService was already installed in this process.");
+			((CondomProcessContentService) handler).mCondom = condom;
+		} else {
+			final Object condom_cs = Proxy.newProxyInstance(condom.mBase.getClassLoader(), new Class[] { IContentService },
+					new CondomProcessContentService(condom, IContentService, cs));
+			ContentResolver_sContentService.set(null, condom_cs);
+		}
+	}
+
 	private CondomProcess() {}
 
 	private static final String TAG_INCOMPATIBILITY = "Incompatibility";
@@ -239,13 +274,29 @@ public class CondomProcess {
 
 	@VisibleForTesting static class CondomProcessActivityManager extends CondomSystemService {
 
-		private Object proceed(final Object proxy, final Method method, final Object[] args) throws Throwable {
-			final String method_name = method.getName(); final Intent intent; final int result;
+		private static int getHandlerId(final String method_name) {
 			switch (method_name) {
-			case "broadcastIntent":	// int broadcastIntent(IApplicationThread caller, Intent intent, String resolvedType, IIntentReceiver resultTo, int resultCode, String resultData, Bundle map, String/[23+] String[] requiredPermissions, [18+ int appOp], [23+ Bundle options], boolean serialized, boolean sticky, [16+ int userId]);
-				result = mCondom.proceed(OutboundType.BROADCAST, (Intent) args[1], Integer.MIN_VALUE,
-						() -> (Integer) CondomProcessActivityManager.super.invoke(proxy, method, args));
+			case "broadcastIntent": return BROADCAST_INTENT;
+			case "bindService":				// Android P-
+			case "bindIsolatedService":		// Android Q+
+				return BIND_SERVICE;
+			case "startService": return START_SERVICE;
+			case "getContentProvider": return GET_CONTENT_PROVIDER;
+			}
+			return PASS_THROUGH;
+		}
+
+		@Override Object proceed(final int handler_id, final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Intent intent; final int result;
+			switch (handler_id) {
+			case BROADCAST_INTENT:	// int broadcastIntent(IApplicationThread caller, Intent intent, String resolvedType, IIntentReceiver resultTo, int resultCode, String resultData, Bundle map, String/[23+] String[] requiredPermissions, [18+ int appOp], [23+ Bundle options], boolean serialized, boolean sticky, [16+ int userId]);
 				final Object result_receiver = args[3];
+				final boolean deferrable = result_receiver == null && SDK_INT >= JELLY_BEAN_MR1	// Neither ordered nor sticky
+						&& ! (Boolean) args[args.length - 3] && ! (Boolean) args[args.length - 2];
+				final String permission = args[7] instanceof String[] ? Arrays.toString((String[]) args[7]) : (String) args[7];	// Only as key for coalescing
+				result = mCondom.proceed(OutboundType.BROADCAST, (Intent) args[1], Integer.MIN_VALUE, () ->
+						deferrable && mCondom.deferDuringStartup(OutboundType.BROADCAST, (Intent) args[1], permission, replayWithIntent(method, args, 1))
+						? 0/* ActivityManager.BROADCAST_SUCCESS */ : (Integer) invokeService(method, args));
 				if (result != Integer.MIN_VALUE) return result;
 				if (result_receiver == null) return 0/* ActivityManager.BROADCAST_SUCCESS */;
 				// Invoke the result receiver as if the ordered broadcast has been sent to no one, if the broadcast is blocked by condom.
@@ -257,104 +308,114 @@ public class CondomProcess {
 						? new Object[] { args[1], args[4], args[5], args[6], args[args.length - 3], args[args.length - 2], args[args.length - 1] }
 						: new Object[] { args[1], args[4], args[5], args[6], args[8], args[9] });
 				return 0/* ActivityManager.BROADCAST_SUCCESS */;
-			case "bindService":				// Android P-
-			case "bindIsolatedService":		// Android Q+
+			case BIND_SERVICE:
 				intent = (Intent) args[2];
 				result = mCondom.proceed(OutboundType.BIND_SERVICE, intent, 0,
-						() -> (Integer) CondomProcessActivityManager.super.invoke(proxy, method, args));	// Result: 0 - no match, >0 - succeed, <0 - SecurityException.
+						() -> (Integer) invokeService(method, args));	// Result: 0 - no match, >0 - succeed, <0 - SecurityException.
 				if (result > 0) mCondom.logIfOutboundPass(FULL_TAG, intent, CondomCore.getTargetPackage(intent), CondomCore.CondomEvent.BIND_PASS);
 				return result;
-			case "startService":
+			case START_SERVICE:
 				intent = (Intent) args[1];
-				final ComponentName component = mCondom.proceed(OutboundType.START_SERVICE, intent, null,
-						() -> (ComponentName) CondomProcessActivityManager.super.invoke(proxy, method, args));
+				final ComponentName component = mCondom.proceedStartService(intent, replayWithIntent(method, args, 1), () ->
+						(ComponentName) invokeService(method, args));
 				if (component != null) mCondom.logIfOutboundPass(FULL_TAG, intent, component.getPackageName(), CondomCore.CondomEvent.START_PASS);
 				return component;
-			case "getContentProvider":		// (ApplicationThread, [Q+ String opPackageName], String authority, int userId, boolean stable)
+			case GET_CONTENT_PROVIDER:		// (ApplicationThread, [Q+ String opPackageName], String authority, int userId, boolean stable)
 				final String name = (String) args[SDK_INT >= Q ? 2 : 1];
 				if (! mCondom.shouldAllowProvider(mCondom.mBase, name, PackageManager.MATCH_ALL))	// MATCH_ALL as special hint to ask the hooked IPackageManager.resolveContentProvider() to bypass.
 					return null;	// Actually blocked by IPackageManager.resolveContentProvider() which is called in shouldAllowProvider() above.
 				break;
 			}
-			return super.invoke(proxy, method, args);
+			return invokeService(method, args);
 		}
 
-		@Override public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-			try {
-				return proceed(proxy, method, args);
-			} catch (final Exception e) {
-				if (DEBUG) Log.e(TAG, "Error proceeding " + method, e);
-			}
-			return super.invoke(proxy, method, args);
+		CondomProcessActivityManager(final CondomCore condom, final Class<?> service_interface, final Object am) {
+			super(service_interface, am, "IActivityManager.", condom.DEBUG, CondomProcessActivityManager::getHandlerId);
+			mCondom = condom;
 		}
 
-		CondomProcessActivityManager(final CondomCore condom, final Object am) { super (am, "IActivityManager.", condom.DEBUG); mCondom = condom; }
-
 		private CondomCore mCondom;
+
+		private static final int BROADCAST_INTENT = 1, BIND_SERVICE = 2, START_SERVICE = 3, GET_CONTENT_PROVIDER = 4;
 	}
 
 	@VisibleForTesting static class CondomProcessPackageManager extends CondomSystemService {
 
-		private Object proceed(final Object proxy, final Method method, final Object[] args) throws Throwable {
-			final String method_name = method.getName();
-			OutboundType outbound_type = null;
+		private static int getHandlerId(final String method_name) {
 			switch (method_name) {
-			case "queryIntentServices":
+			case "queryIntentServices": return QUERY_INTENT_SERVICES;
+			case "queryIntentReceivers": return QUERY_INTENT_RECEIVERS;
+			case "resolveService": return RESOLVE_SERVICE;
+			case "resolveContentProvider": return RESOLVE_CONTENT_PROVIDER;
+			case "getInstalledApplications":
+			case "getInstalledPackages":
+				return GET_INSTALLED;
+			case "getPackageInfo": return GET_PACKAGE_INFO;
+			case "getPackageUid": return GET_PACKAGE_UID;
+			}
+			return PASS_THROUGH;
+		}
+
+		@Override Object proceed(final int handler_id, final Object proxy, final Method method, final Object[] args) throws Throwable {
+			OutboundType outbound_type = null;
+			switch (handler_id) {
+			case QUERY_INTENT_SERVICES:
 				outbound_type = OutboundType.QUERY_SERVICES;
-				if (IPackageManager_queryIntentServices == null) IPackageManager_queryIntentServices = method;
-				if (args[0] == DUMMY_INTENT) return null;	// Short-circuit for capturing IPackageManager_queryIntentServices.
-			case "queryIntentReceivers":
+			case QUERY_INTENT_RECEIVERS:
 				if (outbound_type == null) outbound_type = OutboundType.QUERY_RECEIVERS;
 
-				final Object receivers = super.invoke(proxy, method, args);
+				final Object receivers = invokeService(method, args);
 
 				final List<ResolveInfo> list = mCondom.proceedQuery(outbound_type, (Intent) args[0], () -> asList(receivers),
 						outbound_type == OutboundType.QUERY_SERVICES ? CondomCore.SERVICE_PACKAGE_GETTER : CondomCore.RECEIVER_PACKAGE_GETTER);	// Both "queryIntentServices" and "queryIntentReceivers" reach here.
 				if (list.isEmpty()) asList(receivers).clear();	// In case Collections.emptyList() is returned due to targeted query being rejected by outbound judge.
 				return receivers;
 
-			case "resolveService":
+			case RESOLVE_SERVICE:
 				// Intent flags could only filter background receivers, we have to deal with services by ourselves.
 				final Intent intent = (Intent) args[0];
 				final int original_intent_flags = intent.getFlags();
 				return mCondom.proceed(OutboundType.QUERY_SERVICES, intent, null, () -> {
-					if (! mCondom.mExcludeBackgroundServices && mCondom.mOutboundJudge == null)
-						return (ResolveInfo) CondomProcessPackageManager.super.invoke(proxy, method, args);
+					if (! mCondom.mExcludeBackgroundServices && ! mCondom.hasOutboundJudge())
+						return (ResolveInfo) invokeService(method, args);
 
-					if (IPackageManager_queryIntentServices == null) {
-						mCondom.mBase.getPackageManager().queryIntentServices(DUMMY_INTENT, 0);
-						if (IPackageManager_queryIntentServices == null)
-							throw new IllegalStateException("Failed to capture IPackageManager.queryIntentServices()");
-					}
-					final List<ResolveInfo> candidates = asList(CondomProcessPackageManager.super.invoke(proxy, IPackageManager_queryIntentServices, args));
+					if (IPackageManager_queryIntentServices == null) throw new IllegalStateException("IPackageManager.queryIntentServices() is not found");
+					final List<ResolveInfo> candidates = asList(invokeService(IPackageManager_queryIntentServices, args));
 					return mCondom.filterCandidates(OutboundType.QUERY_SERVICES, intent.setFlags(original_intent_flags), candidates, FULL_TAG, false);
 				});
 
-			case "resolveContentProvider":
-				final ProviderInfo provider = (ProviderInfo) super.invoke(proxy, method, args);
+			case RESOLVE_CONTENT_PROVIDER:
+				final ProviderInfo provider = (ProviderInfo) invokeService(method, args);
 				final int flags = (int) args[1];
 				if ((flags & PackageManager.MATCH_ALL) != 0) return provider;	// MATCH_ALL will be used by the hooked IActivityManager.getContentProvider().
 				return mCondom.shouldAllowProvider(provider) ? provider : null;
 
-			case "getInstalledApplications":
-			case "getInstalledPackages":
-				mCondom.logConcern(FULL_TAG, "IPackageManager." + method_name);
+			case GET_INSTALLED:
+				mCondom.logConcern(FULL_TAG, "IPackageManager." + method.getName());
 				break;
-			case "getPackageInfo":
-				return mCondom.proceed(OutboundType.GET_PACKAGE_INFO, (String) args[0], null, () ->
-						(PackageInfo) CondomProcessPackageManager.super.invoke(proxy, method, args));
-			case "getPackageUid":
+			case GET_PACKAGE_INFO:
+				return mCondom.proceed(OutboundType.GET_PACKAGE_INFO, (String) args[0], null, () -> {
+					final PackageFlagDowngrade downgrade = mCondom.mPackageFlagDowngrade;
+					if (downgrade == null) return (PackageInfo) invokeService(method, args);
+					final long full_flags = ((Number) args[1]).longValue();		// Flags in long since Android T
+					final PackageFlagDowngrade.Loader<PackageInfo, Throwable> loader = lighter_flags -> {
+						final Object[] downgraded_args = args.clone();
+						final long downgraded_flags = (full_flags & ~ 0xFFFFFFFFL) | (lighter_flags & 0xFFFFFFFFL);
+						downgraded_args[1] = args[1] instanceof Long ? (Object) downgraded_flags : (Object) (int) downgraded_flags;
+						return (PackageInfo) invokeService(method, downgraded_args);
+					};
+					return downgrade.load((String) args[0], (int) full_flags, loader, loader);		// No cache here
+				});
+			case GET_PACKAGE_UID:
 				final String pkg = (String) args[0];
 				final Integer result = mCondom.proceed(OutboundType.GET_PACKAGE_INFO, pkg, null, () ->
-						(Integer) com.oasisfeng.condom.CondomProcess.CondomProcessPackageManager.super.invoke(proxy, method, args));
+						(Integer) invokeService(method, args));
 				if (result == null) throw new PackageManager.NameNotFoundException(pkg);    // TODO: Add test case
 				return result;
 			}
-			return super.invoke(proxy, method, args);
+			return invokeService(method, args);
 		}
 
-		final Intent DUMMY_INTENT = new Intent();
-
 		@SuppressWarnings("unchecked")
 		private <T> List<T> asList(final Object list) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
 			if (list instanceof List) return (List<T>) list;
@@ -365,24 +426,259 @@ public class CondomProcess {
 			return (List<T>) ParceledListSlice_getList.invoke(list);
 		}
 
-		@Override public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-			try {
-				return proceed(proxy, method, args);
-			} catch (final Exception e) {
-				if (DEBUG) Log.e(TAG, "Error proceeding " + method, e);
-			}
-			return super.invoke(proxy, method, args);
+		CondomProcessPackageManager(final CondomCore condom, final Class<?> service_interface, final Object pm) {
+			super(service_interface, pm, "IPackageManager.", condom.DEBUG, CondomProcessPackageManager::getHandlerId);
+			mCondom = condom;
+			Method query_intent_services = null;
+			for (final Method method : service_interface.getMethods())
+				if (method.getName().equals("queryIntentServices")) query_intent_services = method;
+			IPackageManager_queryIntentServices = query_intent_services;
 		}
 
-		CondomProcessPackageManager(final CondomCore condom, final Object pm) { super(pm, "IPackageManager.", condom.DEBUG); mCondom = condom; }
 		@VisibleForTesting CondomCore mCondom;
-		private Method IPackageManager_queryIntentServices;
+		private final @Nullable Method IPackageManager_queryIntentServices;
 		private Method ParceledListSlice_getList;
+
+		private static final int QUERY_INTENT_SERVICES = 1, QUERY_INTENT_RECEIVERS = 2, RESOLVE_SERVICE = 3, RESOLVE_CONTENT_PROVIDER = 4,
+				GET_INSTALLED = 5, GET_PACKAGE_INFO = 6, GET_PACKAGE_UID = 7;
+	}
+
+	/**
+	 * Multiplex content observers registered with the same URI, descendants flag and user onto one real observer,
+	 * which fans out changes to the transports of all subscribed observers in-process.
+	 */
+	@VisibleForTesting static class CondomProcessContentService extends CondomSystemService {
+
+		private static int getHandlerId(final String method_name) {
+			switch (method_name) {
+			case "registerContentObserver": return REGISTER_CONTENT_OBSERVER;
+			case "unregisterContentObserver": return UNREGISTER_CONTENT_OBSERVER;
+			}
+			return PASS_THROUGH;
+		}
+
+		@Override Object proceed(final int handler_id, final Object proxy, final Method method, final Object[] args) throws Throwable {
+			switch (handler_id) {
+			case REGISTER_CONTENT_OBSERVER:		// (Uri uri, boolean notifyForDescendants, IContentObserver observer, [17+ int userHandle], [26+ int targetSdkVersion])
+				final List<Object> key = new ArrayList<>(Arrays.asList(args));
+				key.set(2, null);
+				final FanOutObserver shared;
+				synchronized (this) {
+					FanOutObserver existent;
+					boolean interrupted = false;
+					while ((existent = mObservers.get(key)) != null && existent.pending) interrupted |= awaitPending();	// If failed, try on our own.
+					if (interrupted) Thread.currentThread().interrupt();
+					shared = existent != null ? existent : new FanOutObserver(mCondom.mCallbackHandler, key);
+					subscribe(args[2], shared);
+					if (existent != null) return null;
+					mObservers.put(key, shared);
+				}
+				final Object[] shared_args = args.clone();
+				shared_args[2] = shared.getTransport();
+				boolean registered = false;
+				try {
+					final Object result = invokeService(method, shared_args);
+					registered = true;
+					return result;
+				} finally {		// Roll back if failed, e.g. SecurityException for unknown authority on Android O+
+					synchronized (this) {
+						shared.pending = false;
+						notifyAll();
+						if (! registered) {
+							mObservers.remove(key);
+							for (final Object subscriber : shared.subscribers) unsubscribe(subscriber, shared);		// Only the caller, as joiners wait.
+							shared.subscribers.clear();
+						}
+					}
+				}
+			case UNREGISTER_CONTENT_OBSERVER:		// (IContentObserver observer)
+				final List<FanOutObserver> vacant = new ArrayList<>();
+				synchronized (this) {
+					Set<FanOutObserver> subscriptions;
+					boolean interrupted = false;
+					while ((subscriptions = mSubscriptions.get(args[0])) != null && hasPending(subscriptions)) interrupted |= awaitPending();
+					if (interrupted) Thread.currentThread().interrupt();
+					if (subscriptions == null) break;		// Not registered via us
+					mSubscriptions.remove(args[0]);
+					for (final FanOutObserver observer : subscriptions) {
+						observer.subscribers.removeAll(Collections.singleton(args[0]));		// Unregistered from all, as ContentService does.
+						if (! observer.subscribers.isEmpty()) continue;
+						mObservers.remove(observer.key);
+						vacant.add(observer);
+					}
+				}
+				for (final FanOutObserver observer : vacant) invokeService(method, new Object[] { observer.getTransport() });
+				return null;
+			}
+			return invokeService(method, args);
+		}
+
+		private void subscribe(final Object transport, final FanOutObserver shared) {
+			shared.subscribers.add(transport);
+			Set<FanOutObserver> subscriptions = mSubscriptions.get(transport);
+			if (subscriptions == null) mSubscriptions.put(transport, subscriptions = new HashSet<>());
+			subscriptions.add(shared);
+		}
+
+		private void unsubscribe(final Object transport, final FanOutObserver shared) {
+			final Set<FanOutObserver> subscriptions = mSubscriptions.get(transport);
+			if (subscriptions != null && subscriptions.remove(shared) && subscriptions.isEmpty()) mSubscriptions.remove(transport);
+		}
+
+		private static boolean hasPending(final Set<FanOutObserver> observers) {
+			for (final FanOutObserver observer : observers) if (observer.pending) return true;
+			return false;
+		}
+
+		/** Wait (with lock held) for the outcome of real registration in progress. @return whether interrupted. */
+		private boolean awaitPending() {
+			try {
+				wait();
+				return false;
+			} catch (final InterruptedException e) {
+				return true;
+			}
+		}
+
+		private class FanOutObserver extends ContentObserver {
+
+			@Override public void onChange(final boolean self_change) { dispatch(self_change, null, 0, null); }		// Android 4.0.x only
+			@Override public void onChange(final boolean self_change, final Uri uri) { dispatch(self_change, new Uri[] { uri }, 0, null); }	// Android 4.1.x only
+
+			/** Hidden variant on Android 4.2 ~ 10, with the user of change. (On Android 11+, it is the public variant with flags, which is never called
+			 *  since the variant below is overridden) */
+			@Override public void onChange(final boolean self_change, final @Nullable Uri uri, final int user_id) {
+				dispatch(self_change, new Uri[] { uri }, 0, user_id);
+			}
+
+			@RequiresApi(R) @Override public void onChange(final boolean self_change, final Collection<Uri> uris, final int flags, final UserHandle user) {
+				dispatch(self_change, uris.toArray(new Uri[0]), flags, getIdentifier(user));
+			}
+
+			/** @param user_id the user of change, or null if unknown, in which case the user of registration is used instead. */
+			private void dispatch(final boolean self_change, final @Nullable Uri[] uris, final int flags, final @Nullable Integer user_id) {
+				final List<Object> subscribers;
+				synchronized (CondomProcessContentService.this) { subscribers = new ArrayList<>(this.subscribers); }
+				final Object user = user_id != null ? user_id : key.size() > 3 ? key.get(3) : 0;
+				final Uri uri = uris != null && uris.length > 0 ? uris[0] : null;
+				for (final Object subscriber : subscribers) try {
+					final Method method = getOnChangeMethod(subscriber);
+					if (method.getName().equals("onChangeEtc")) {	// void onChangeEtc(boolean selfChange, Uri[] uris, int flags, int userId), Android 11+
+						method.invoke(subscriber, self_change, uris, flags, user);
+						continue;
+					}
+					// void onChange(boolean selfChange, [16+ Uri uri], [17+ int userId])
+					final int num_params = method.getParameterTypes().length;
+					if (num_params == 1) { method.invoke(subscriber, self_change); continue; }
+					if (uris == null) { invokeOnChange(method, subscriber, self_change, null, user, num_params); continue; }
+					for (final Uri each : uris) invokeOnChange(method, subscriber, self_change, each, user, num_params);
+				} catch (final Exception e) {
+					Log.w(TAG, "Error dispatching change of " + uri + " to " + subscriber, e);
+				}
+			}
+
+			private void invokeOnChange(final Method method, final Object subscriber, final boolean self_change, final @Nullable Uri uri,
+										final Object user, final int num_params) throws InvocationTargetException, IllegalAccessException {
+				if (num_params == 2) method.invoke(subscriber, self_change, uri);
+				else method.invoke(subscriber, self_change, uri, user);
+			}
+
+			/** The transport of this observer, as IContentObserver */
+			Object getTransport() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+				if (mTransport != null) return mTransport;
+				@SuppressLint("DiscouragedPrivateApi") final Method getContentObserver = ContentObserver.class.getDeclaredMethod("getContentObserver");
+				getContentObserver.setAccessible(true);
+				return mTransport = getContentObserver.invoke(this);
+			}
+
+			FanOutObserver(final @Nullable Handler handler, final List<Object> key) { super(handler); this.key = key; }
+
+			final List<Object> key;
+			final List<Object> subscribers = new ArrayList<>();
+			boolean pending = true;		// Until the real registration returns
+			private Object mTransport;
+		}
+
+		/** @return IContentObserver.onChangeEtc() on Android 11+, otherwise the variant of onChange() with most parameters. */
+		private Method getOnChangeMethod(final Object observer) throws NoSuchMethodException {
+			if (IContentObserver_onChange != null) return IContentObserver_onChange;
+			Method found = null;
+			for (Class<?> clazz = observer.getClass(); clazz != null && found == null; clazz = clazz.getSuperclass())	// e.g. Transport extends Stub
+				for (final Class<?> itf : clazz.getInterfaces()) {
+					if (! "android.database.IContentObserver".equals(itf.getName())) continue;
+					for (final Method method : itf.getMethods()) {
+						if (method.getName().equals("onChangeEtc")) { found = method; break; }
+						if (method.getName().equals("onChange") && (found == null || method.getParameterTypes().length > found.getParameterTypes().length))
+							found = method;
+					}
+				}
+			if (found == null) throw new NoSuchMethodException("IContentObserver.onChange");
+			return IContentObserver_onChange = found;
+		}
+
+		/** UserHandle.getIdentifier() is not public, while the identifier is all it writes into parcel. */
+		private static int getIdentifier(final UserHandle user) {
+			final Parcel parcel = Parcel.obtain();
+			try {
+				user.writeToParcel(parcel, 0);
+				parcel.setDataPosition(0);
+				return parcel.readInt();
+			} finally {
+				parcel.recycle();
+			}
+		}
+
+		CondomProcessContentService(final CondomCore condom, final Class<?> service_interface, final Object cs) {
+			super(service_interface, cs, "IContentService.", condom.DEBUG, CondomProcessContentService::getHandlerId);
+			mCondom = condom;
+		}
+
+		private CondomCore mCondom;
+		private final Map<List<Object>, FanOutObserver> mObservers = new HashMap<>();
+		private final Map<Object/* IContentObserver */, Set<FanOutObserver>> mSubscriptions = new HashMap<>();
+		private Method IContentObserver_onChange;
+
+		private static final int REGISTER_CONTENT_OBSERVER = 1, UNREGISTER_CONTENT_OBSERVER = 2;
 	}
 
-	private static class CondomSystemService implements InvocationHandler {
+	/**
+	 * The base of system service proxy, dispatching intercepted methods via a table precomputed at installation.
+	 * Other methods take the fast path to the original service, with no string matching or logging.
+	 */
+	private static abstract class CondomSystemService implements InvocationHandler {
+
+		@Override public final Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final Integer handler_id = mDispatchTable.get(method.getName());
+			if (handler_id == null) try {		// Fast path
+				return method.invoke(mService, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+			try {
+				return proceed(handler_id, proxy, method, args);
+			} catch (final Exception e) {
+				if (DEBUG) Log.e(TAG, "Error proceeding " + method, e);
+			}
+			return invokeService(method, args);
+		}
+
+		abstract Object proceed(int handler_id, Object proxy, Method method, Object[] args) throws Throwable;
+
+		/** @return the replay of deferred request, which invokes the method with the intent argument at specified index replaced. */
+		StartupQuietPeriod.Replay replayWithIntent(final Method method, final Object[] args, final int intent_index) {
+			return intent -> {
+				final Object[] replay_args = args.clone();
+				replay_args[intent_index] = intent;
+				try {
+					invokeService(method, replay_args);
+				} catch (final Throwable t) {
+					Log.w(TAG, "Error replaying " + mServiceTag + method.getName(), t);
+				}
+			};
+		}
 
-		@Override public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+		/** Invoke the method of original service, used by intercepted methods. */
+		Object invokeService(final Method method, final Object[] args) throws Throwable {
 			if (DEBUG) Log.d(TAG, mServiceTag + method.getName() + Arrays.deepToString(args));
 			try {
 				return method.invoke(mService, args);
@@ -391,11 +687,27 @@ public class CondomProcess {
 			}
 		}
 
-		CondomSystemService(final Object am, final String tag, final boolean debuggable) { mService = am; mServiceTag = tag; DEBUG = debuggable; }
+		CondomSystemService(final Class<?> service_interface, final Object service, final String tag, final boolean debuggable, final HandlerIdMapper mapper) {
+			mService = service; mServiceTag = tag; DEBUG = debuggable;
+			// Keyed by method name, as ART creates a new Method instance for each invocation of proxy, while names are interned.
+			final Map<String, Integer> table = new IdentityHashMap<>();
+			for (final Method method : service_interface.getMethods()) {
+				final String name = method.getName().intern();
+				final int handler_id = mapper.getHandlerId(name);
+				if (handler_id != PASS_THROUGH) table.put(name, handler_id);
+			}
+			mDispatchTable = table;
+		}
+
+		/** Map the method name to the handler ID for the method to intercept, or {@link #PASS_THROUGH}. Static, as it is called before subclass is constructed. */
+		interface HandlerIdMapper { int getHandlerId(String method_name); }
 
 		private final Object mService;
 		private final String mServiceTag;
+		private final Map<String/* method name */, Integer> mDispatchTable;
 		final boolean DEBUG;
+
+		static final int PASS_THROUGH = 0;
 	}
 
 	private static String FULL_TAG = "CondomProcess";	// Both will be replaced by compound tag in install().
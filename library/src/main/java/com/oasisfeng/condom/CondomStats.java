@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import androidx.annotation.Keep;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Snapshot of in-process statistics of condom, split by the logging tag of {@link CondomContext} or {@link CondomProcess}.
+ *
+ * <p>Instances sharing the same tag are counted together.
+ *
+ * Created by agent on 2026/10/17.
+ */
+@Keep
+public class CondomStats {
+
+	private static final Registry<Counters> sCounters = new Registry<Counters>() {
+		@Override Counters create() { return new Counters(); }
+	};
+	private static final Registry<Histograms> sHistograms = new Registry<Histograms>() {
+		@Override Histograms create() { return new Histograms(); }
+	};
+	private static final Registry<CallbackMetrics> sCallbackMetrics = new Registry<CallbackMetrics>() {
+		@Override CallbackMetrics create() { return new CallbackMetrics(); }
+	};
+	private static final Registry<NotificationMetrics> sNotificationMetrics = new Registry<NotificationMetrics>() {
+		@Override NotificationMetrics create() { return new NotificationMetrics(); }
+	};
+	private static final Registry<ProbeMetrics> sProbeMetrics = new Registry<ProbeMetrics>() {
+		@Override ProbeMetrics create() { return new ProbeMetrics(); }
+	};
+	private static final Registry<DowngradeMetrics> sDowngradeMetrics = new Registry<DowngradeMetrics>() {
+		@Override DowngradeMetrics create() { return new DowngradeMetrics(); }
+	};
+	/** Query metrics by authority, by tag */
+	private static final Map<String, Map<String, QueryMetrics>> sQueryMetrics = new HashMap<>();
+
+	/** The outcome of outbound request or query candidate */
+	public enum Outcome {
+		/** Allowed to go through, including those also counted as {@link #DRY_RUN_BLOCKED} */
+		ALLOWED,
+		/** Blocked by outbound judge or policy */
+		BLOCKED,
+		/** Would be blocked or filtered if not in dry-run mode */
+		DRY_RUN_BLOCKED,
+		/** Targeting the package of current app, which is always allowed */
+		SELF_TARGET,
+		/** Filtered out from the result of query */
+		FILTERED_CANDIDATE,
+		/** Rejected due to the rate limit */
+		THROTTLED,
+		/** Rejected due to the target package being quarantined for bursting requests */
+		QUARANTINED,
+		/** Allowed but deferred until the startup quiet period closes, also counted as {@link #ALLOWED} */
+		DEFERRED,
+		/** Allowed but coalesced into a previous equal request, also counted as {@link #ALLOWED} */
+		COALESCED,
+	}
+
+	/**
+	 * The part of latency of outbound request, recorded only if enabled by {@link CondomOptions#recordLatency(boolean)}
+	 *
+	 * <p>Latency is grouped by {@link OutboundType}, the same as counts, not per API method. (e.g. both
+	 * {@link android.content.pm.PackageManager#queryIntentServices(android.content.Intent, int) queryIntentServices()} and
+	 * {@link android.content.pm.PackageManager#resolveService(android.content.Intent, int) resolveService()} are in {@link OutboundType#QUERY_SERVICES})
+	 */
+	public enum Latency {
+		/** Time spent in condom itself, including outbound judge and candidates filtering */
+		OVERHEAD,
+		/** Time spent in the downstream call, mostly the IPC to system services */
+		DOWNSTREAM,
+	}
+
+	/** The part of latency of callback dispatched on the background thread, recorded only if enabled by {@link CondomOptions#dispatchCallbacksInBackground(boolean)} */
+	public enum CallbackLatency {
+		/** Time spent waiting in the queue of background thread */
+		QUEUEING,
+		/** Time spent in the callback itself */
+		EXECUTION,
+	}
+
+	/** Take a snapshot of statistics of all tags in current process. */
+	public static CondomStats snapshot() {
+		final Map<String, Map<String, long[]>> queries = new TreeMap<>();
+		synchronized (sQueryMetrics) {
+			for (final Map.Entry<String, Map<String, QueryMetrics>> entry : sQueryMetrics.entrySet()) {
+				final Map<String, long[]> by_authority = new TreeMap<>();
+				for (final Map.Entry<String, QueryMetrics> metrics : entry.getValue().entrySet())
+					by_authority.put(metrics.getKey(), metrics.getValue().copy());
+				queries.put(entry.getKey(), by_authority);
+			}
+		}
+		return new CondomStats(sCounters.copy(), sHistograms.copy(), sCallbackMetrics.copy(), sNotificationMetrics.copy(), queries,
+				sProbeMetrics.copy(), sDowngradeMetrics.copy());
+	}
+
+	public Set<String> getTags() { return Collections.unmodifiableSet(mCounts.keySet()); }
+
+	/** @return the count of specified outbound type and outcome for the tag, or 0 if tag is unknown. */
+	public long getCount(final String tag, final OutboundType type, final Outcome outcome) {
+		final long[] counts = mCounts.get(tag);
+		return counts != null ? counts[Counters.index(type, outcome)] : 0;
+	}
+
+	/** @return the count of specified outbound type and outcome summed over all tags. */
+	public long getTotal(final OutboundType type, final Outcome outcome) {
+		long total = 0;
+		final int index = Counters.index(type, outcome);
+		for (final long[] counts : mCounts.values()) total += counts[index];
+		return total;
+	}
+
+	/** @return the latency histogram of specified tag, outbound type (all API methods of this type) and part, or null if latency is not recorded for the tag. */
+	public @Nullable Histogram getLatency(final String tag, final OutboundType type, final Latency part) {
+		final long[] histograms = mHistograms.get(tag);
+		return histograms != null ? new Histogram(histograms, Histograms.offset(type, part)) : null;
+	}
+
+	/** @return the number of callbacks of specified tag pending in the queue of background thread. */
+	public long getCallbackQueueDepth(final String tag) {
+		final long[] metrics = mCallbacks.get(tag);
+		return metrics != null ? metrics[CallbackMetrics.DEPTH] : 0;
+	}
+
+	/** @return the maximal number of callbacks of specified tag ever pending in the queue of background thread. */
+	public long getMaxCallbackQueueDepth(final String tag) {
+		final long[] metrics = mCallbacks.get(tag);
+		return metrics != null ? metrics[CallbackMetrics.MAX_DEPTH] : 0;
+	}
+
+	/** @return the latency histogram of callbacks dispatched on the background thread, or null if not enabled for the tag. */
+	public @Nullable Histogram getCallbackLatency(final String tag, final CallbackLatency part) {
+		final long[] metrics = mCallbacks.get(tag);
+		return metrics != null ? new Histogram(metrics, CallbackMetrics.offset(part)) : null;
+	}
+
+	/** @return the number of content change notifications merged into previous ones, if enabled by {@link CondomOptions#coalesceNotifyChange(long)} */
+	public long getMergedNotifications(final String tag) {
+		final long[] metrics = mNotifications.get(tag);
+		return metrics != null ? metrics[NotificationMetrics.MERGED] : 0;
+	}
+
+	/** @return the authorities queried with specified tag, if enabled by {@link CondomOptions#monitorContentQueries(boolean)} */
+	public Set<String> getQueriedAuthorities(final String tag) {
+		final Map<String, long[]> by_authority = mQueries.get(tag);
+		return by_authority != null ? Collections.unmodifiableSet(by_authority.keySet()) : Collections.<String>emptySet();
+	}
+
+	/** @return the statistics of queries to specified authority with the tag, or null if none. */
+	public @Nullable QueryStats getQueryStats(final String tag, final String authority) {
+		final Map<String, long[]> by_authority = mQueries.get(tag);
+		final long[] metrics = by_authority != null ? by_authority.get(authority) : null;
+		return metrics != null ? new QueryStats(metrics) : null;
+	}
+
+	/** @return the number of probes for package via {@link android.content.pm.PackageManager#getPackageInfo(String, int)} or
+	 *          {@link android.content.pm.PackageManager#getApplicationInfo(String, int)}, counted if enabled by {@link CondomOptions#prefetchOnProbeStorm(int, long)} */
+	public long getPackageProbes(final String tag) { return getProbeCount(tag, ProbeMetrics.PROBES); }
+
+	/** @return the number of probes for missing package answered from the snapshot of installed packages, without IPC. */
+	public long getPackageProbesAnsweredLocally(final String tag) { return getProbeCount(tag, ProbeMetrics.ANSWERED_LOCALLY); }
+
+	/** @return the number of probe storms detected, each of which triggers the prefetch of installed packages (if not yet fetched). */
+	public long getPackageProbeStorms(final String tag) { return getProbeCount(tag, ProbeMetrics.STORMS); }
+
+	private long getProbeCount(final String tag, final int index) {
+		final long[] counts = mProbes.get(tag);
+		return counts != null ? counts[index] : 0;
+	}
+
+	/** @return the number of package queries with flags downgraded by {@link CondomOptions#downgradePackageQueryFlags(int)} */
+	public long getPackageQueryDowngrades(final String tag) { return getDowngradeCount(tag, DowngradeMetrics.DOWNGRADES); }
+
+	/** @return the estimated bytes of binder parcels saved by {@link CondomOptions#downgradePackageQueryFlags(int)}, if enabled by {@link CondomOptions#sampleDowngradeSavings(boolean)} */
+	public long getBytesSavedByDowngrade(final String tag) { return getDowngradeCount(tag, DowngradeMetrics.BYTES_SAVED); }
+
+	private long getDowngradeCount(final String tag, final int index) {
+		final long[] counts = mDowngrades.get(tag);
+		return counts != null ? counts[index] : 0;
+	}
+
+	/** Dump all non-zero counts and latency histograms in human-readable form. Latency is dumped per outbound type as "TYPE.* PART". */
+	public void dump(final PrintWriter writer) {
+		for (final Map.Entry<String, long[]> entry : mCounts.entrySet()) {
+			writer.print(entry.getKey()); writer.println(':');
+			final long[] counts = entry.getValue();
+			for (final OutboundType type : OutboundType.values())
+				for (final Outcome outcome : Outcome.values()) {
+					final long count = counts[Counters.index(type, outcome)];
+					if (count != 0) writer.println("  " + type + "." + outcome + " = " + count);
+				}
+			final long[] histograms = mHistograms.get(entry.getKey());
+			if (histograms == null) continue;
+			for (final OutboundType type : OutboundType.values())
+				for (final Latency part : Latency.values()) {
+					final Histogram histogram = new Histogram(histograms, Histograms.offset(type, part));
+					if (histogram.getTotalCount() != 0) writer.println("  " + type + ".* " + part + ": " + histogram);	// Of all methods in this outbound type
+				}
+		}
+		for (final Map.Entry<String, long[]> entry : mCallbacks.entrySet()) {
+			final long[] metrics = entry.getValue();
+			writer.println(entry.getKey() + " callbacks: depth=" + metrics[CallbackMetrics.DEPTH] + ", max=" + metrics[CallbackMetrics.MAX_DEPTH]);
+			for (final CallbackLatency part : CallbackLatency.values())
+				writer.println("  " + part + ": " + new Histogram(metrics, CallbackMetrics.offset(part)));
+		}
+		for (final Map.Entry<String, long[]> entry : mNotifications.entrySet())
+			writer.println(entry.getKey() + " merged notifications: " + entry.getValue()[NotificationMetrics.MERGED]);
+		for (final Map.Entry<String, Map<String, long[]>> entry : mQueries.entrySet()) {
+			writer.print(entry.getKey()); writer.println(" queries:");
+			for (final Map.Entry<String, long[]> by_authority : entry.getValue().entrySet())
+				writer.println("  " + by_authority.getKey() + ": " + new QueryStats(by_authority.getValue()));
+		}
+		for (final Map.Entry<String, long[]> entry : mProbes.entrySet()) {
+			final long[] counts = entry.getValue();
+			writer.println(entry.getKey() + " package probes: " + counts[ProbeMetrics.PROBES] + ", answered locally: " + counts[ProbeMetrics.ANSWERED_LOCALLY]
+					+ ", storms: " + counts[ProbeMetrics.STORMS]);
+		}
+		for (final Map.Entry<String, long[]> entry : mDowngrades.entrySet()) {
+			final long[] counts = entry.getValue();
+			writer.println(entry.getKey() + " package query downgrades: " + counts[DowngradeMetrics.DOWNGRADES]
+					+ ", bytes saved: " + counts[DowngradeMetrics.BYTES_SAVED]);
+		}
+	}
+
+	@Override public String toString() {
+		final StringWriter buffer = new StringWriter();
+		dump(new PrintWriter(buffer));
+		return buffer.toString();
+	}
+
+	private CondomStats(final Map<String, long[]> counts, final Map<String, long[]> histograms, final Map<String, long[]> callbacks,
+						final Map<String, long[]> notifications, final Map<String, Map<String, long[]>> queries, final Map<String, long[]> probes,
+						final Map<String, long[]> downgrades) {
+		mCounts = counts; mHistograms = histograms; mCallbacks = callbacks; mNotifications = notifications; mQueries = queries;
+		mProbes = probes; mDowngrades = downgrades;
+	}
+
+	private final Map<String, long[]> mCounts;
+	private final Map<String, long[]> mHistograms;
+	private final Map<String, long[]> mCallbacks;
+	private final Map<String, long[]> mNotifications;
+	private final Map<String, Map<String, long[]>> mQueries;
+	private final Map<String, long[]> mProbes;
+	private final Map<String, long[]> mDowngrades;
+
+	/**
+	 * Latency histogram with fixed exponential buckets in nanoseconds. Bucket N (N > 0) counts latency in [2^(N-1), 2^N) nanoseconds,
+	 * while the last bucket also counts all above.
+	 */
+	@Keep public static class Histogram {
+
+		public static int getNumBuckets() { return Histograms.NUM_BUCKETS; }
+		/** @return the exclusive upper bound of the bucket in nanoseconds, or {@link Long#MAX_VALUE} for the last bucket. */
+		public static long getBucketUpperBound(final int bucket) { return bucket < Histograms.NUM_BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE; }
+
+		public long getCount(final int bucket) { return mData[mOffset + bucket]; }
+
+		public long getTotalCount() {
+			long total = 0;
+			for (int i = 0; i < Histograms.NUM_BUCKETS; i ++) total += mData[mOffset + i];
+			return total;
+		}
+
+		public long getMeanNanos() {
+			final long total = getTotalCount();
+			return total == 0 ? 0 : mData[mOffset + Histograms.NUM_BUCKETS] / total;
+		}
+
+		/** @return the upper bound of the bucket which the specified percentile (0 ~ 100) falls in, in nanoseconds. */
+		public long getPercentileUpperBound(final double percentile) {
+			final long total = getTotalCount();
+			if (total == 0) return 0;
+			final long rank = (long) Math.ceil(total * percentile / 100);
+			long count = 0;
+			for (int i = 0; i < Histograms.NUM_BUCKETS; i ++)
+				if ((count += mData[mOffset + i]) >= rank) return getBucketUpperBound(i);
+			return Long.MAX_VALUE;
+		}
+
+		@Override public String toString() {
+			return "n=" + getTotalCount() + ", mean=" + getMeanNanos() / 1000 + "us, p50<" + getPercentileUpperBound(50) / 1000
+					+ "us, p90<" + getPercentileUpperBound(90) / 1000 + "us, p99<" + getPercentileUpperBound(99) / 1000 + "us";
+		}
+
+		private Histogram(final long[] data, final int offset) { mData = data; mOffset = offset; }
+
+		private final long[] mData;
+		private final int mOffset;
+	}
+
+	/** Statistics of queries to one authority */
+	@Keep public static class QueryStats {
+
+		public long getQueries() { return mData[QueryMetrics.QUERIES]; }
+		/** @return the total number of rows in all cursors returned, including those invisible due to the row limit. */
+		public long getRows() { return mData[QueryMetrics.ROWS]; }
+		/** @return the number of cursor windows filled, each of which is a round-trip across binder for cursor of remote provider. */
+		public long getWindowFills() { return mData[QueryMetrics.WINDOW_FILLS]; }
+		/** @return the number of violations against {@link CondomOptions#limitContentQueries(int, String[])} */
+		public long getViolations() { return mData[QueryMetrics.VIOLATIONS]; }
+		/** @return the latency of queries, until the first window of cursor is filled. */
+		public Histogram getLatency() { return new Histogram(mData, QueryMetrics.HISTOGRAM_OFFSET); }
+
+		@Override public String toString() {
+			return "queries=" + getQueries() + ", rows=" + getRows() + ", window_fills=" + getWindowFills() + ", violations=" + getViolations()
+					+ ", latency: " + getLatency();
+		}
+
+		private QueryStats(final long[] data) { mData = data; }
+
+		private final long[] mData;
+	}
+
+	/** Get the counters of specified tag, which are shared by all condom instances with the same tag. */
+	static Counters getCounters(final String tag) { return sCounters.get(tag); }
+
+	/** Get the latency histograms of specified tag, which are shared by all condom instances with the same tag. */
+	static Histograms getHistograms(final String tag) { return sHistograms.get(tag); }
+
+	/** Get the metrics of callbacks dispatched on the background thread for specified tag. */
+	static CallbackMetrics getCallbackMetrics(final String tag) { return sCallbackMetrics.get(tag); }
+
+	/** Get the metrics of content change notifications for specified tag. */
+	static NotificationMetrics getNotificationMetrics(final String tag) { return sNotificationMetrics.get(tag); }
+
+	/** Get the metrics of package probes for specified tag. */
+	static ProbeMetrics getProbeMetrics(final String tag) { return sProbeMetrics.get(tag); }
+
+	/** Get the metrics of package query downgrades for specified tag. */
+	static DowngradeMetrics getDowngradeMetrics(final String tag) { return sDowngradeMetrics.get(tag); }
+
+	/** Get the metrics of queries to specified authority with the tag. */
+	static QueryMetrics getQueryMetrics(final String tag, final String authority) {
+		synchronized (sQueryMetrics) {
+			Map<String, QueryMetrics> by_authority = sQueryMetrics.get(tag);
+			if (by_authority == null) sQueryMetrics.put(tag, by_authority = new HashMap<>());
+			QueryMetrics metrics = by_authority.get(authority);
+			if (metrics == null) by_authority.put(authority, metrics = new QueryMetrics());
+			return metrics;
+		}
+	}
+
+	/** Metrics of one feature by tag, shared by all condom instances with the same tag. */
+	private static abstract class Registry<T extends Metrics> {
+
+		T get(final String tag) {
+			synchronized (mMetrics) {
+				T metrics = mMetrics.get(tag);
+				if (metrics == null) mMetrics.put(tag, metrics = create());
+				return metrics;
+			}
+		}
+
+		Map<String, long[]> copy() {
+			final Map<String, long[]> copies = new TreeMap<>();
+			synchronized (mMetrics) {
+				for (final Map.Entry<String, T> entry : mMetrics.entrySet())
+					copies.put(entry.getKey(), entry.getValue().copy());
+			}
+			return copies;
+		}
+
+		abstract T create();
+
+		private final Map<String, T> mMetrics = new HashMap<>();
+	}
+
+	/** The base of metrics, as cells of atomic counters, copied into the snapshot as is. */
+	static abstract class Metrics {
+
+		long[] copy() {
+			final long[] copy = new long[mCells.length()];
+			for (int i = 0; i < copy.length; i ++) copy[i] = mCells.get(i);
+			return copy;
+		}
+
+		Metrics(final int num_cells) { mCells = new AtomicLongArray(num_cells); }
+
+		final AtomicLongArray mCells;
+	}
+
+	/** Counters striped by thread, to reduce contention and cache-line bouncing among concurrent threads. */
+	static class Counters extends Metrics {
+
+		void increment(final OutboundType type, final Outcome outcome) {
+			final int stripe = (int) Thread.currentThread().getId() & (NUM_STRIPES - 1);
+			mCells.incrementAndGet(stripe * STRIPE_STRIDE + index(type, outcome));
+		}
+
+		/** @return the sum of all stripes */
+		@Override long[] copy() {
+			final long[] sum = new long[NUM_CELLS];
+			for (int stripe = 0; stripe < NUM_STRIPES; stripe ++)
+				for (int i = 0; i < NUM_CELLS; i ++)
+					sum[i] += mCells.get(stripe * STRIPE_STRIDE + i);
+			return sum;
+		}
+
+		static int index(final OutboundType type, final Outcome outcome) { return type.ordinal() * NUM_OUTCOMES + outcome.ordinal(); }
+
+		Counters() { super(NUM_STRIPES * STRIPE_STRIDE); }
+
+		private static final int NUM_STRIPES = 8;		// Must be power of 2
+		private static final int NUM_OUTCOMES = Outcome.values().length;
+		private static final int NUM_CELLS = OutboundType.values().length * NUM_OUTCOMES;
+		private static final int STRIPE_STRIDE = ((NUM_CELLS + 7) / 8 + 1) * 8;	// Padded to whole cache lines (8 longs) plus one more line.
+	}
+
+	/** Allocation-free latency histograms for all outbound types, each followed by a cell for the sum of latency. */
+	static class Histograms extends Metrics {
+
+		void record(final OutboundType type, final Latency part, final long nanos) { record(mCells, offset(type, part), nanos); }
+
+		static void record(final AtomicLongArray cells, final int offset, final long nanos) {
+			final int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos), NUM_BUCKETS - 1);
+			cells.incrementAndGet(offset + bucket);
+			cells.addAndGet(offset + NUM_BUCKETS, nanos);
+		}
+
+		static int offset(final OutboundType type, final Latency part) { return (type.ordinal() * NUM_PARTS + part.ordinal()) * HISTOGRAM_SIZE; }
+
+		Histograms() { super(OutboundType.values().length * NUM_PARTS * HISTOGRAM_SIZE); }
+
+		static final int NUM_BUCKETS = 40;		// Up to 2^39 ns (about 9 minutes)
+		static final int HISTOGRAM_SIZE = NUM_BUCKETS + 1;
+		private static final int NUM_PARTS = Latency.values().length;
+	}
+
+	/** Queue depth (current and maximal) followed by latency histograms of callbacks dispatched on the background thread. */
+	static class CallbackMetrics extends Metrics {
+
+		void onEnqueued() {
+			final long depth = mCells.incrementAndGet(DEPTH);
+			long max;
+			while (depth > (max = mCells.get(MAX_DEPTH)))
+				if (mCells.compareAndSet(MAX_DEPTH, max, depth)) break;
+		}
+
+		void onDispatched(final long queueing_nanos, final long execution_nanos) {
+			mCells.decrementAndGet(DEPTH);
+			Histograms.record(mCells, offset(CallbackLatency.QUEUEING), queueing_nanos);
+			Histograms.record(mCells, offset(CallbackLatency.EXECUTION), execution_nanos);
+		}
+
+		static int offset(final CallbackLatency part) { return 2 + part.ordinal() * Histograms.HISTOGRAM_SIZE; }
+
+		CallbackMetrics() { super(2 + CallbackLatency.values().length * Histograms.HISTOGRAM_SIZE); }
+
+		static final int DEPTH = 0;
+		static final int MAX_DEPTH = 1;
+	}
+
+	/** Counts of queries, rows, window fills and violations, followed by latency histogram of queries to one authority. */
+	static class QueryMetrics extends Metrics {
+
+		void onQuery(final int rows, final long nanos) {
+			mCells.incrementAndGet(QUERIES);
+			mCells.addAndGet(ROWS, rows);
+			Histograms.record(mCells, HISTOGRAM_OFFSET, nanos);
+		}
+
+		void onWindowFilled() { mCells.incrementAndGet(WINDOW_FILLS); }
+		void onViolation() { mCells.incrementAndGet(VIOLATIONS); }
+
+		QueryMetrics() { super(HISTOGRAM_OFFSET + Histograms.HISTOGRAM_SIZE); }
+
+		static final int QUERIES = 0, ROWS = 1, WINDOW_FILLS = 2, VIOLATIONS = 3;
+		static final int HISTOGRAM_OFFSET = 4;
+	}
+
+	/** Count of content change notifications merged into previous ones */
+	static class NotificationMetrics extends Metrics {
+
+		void onMerged() { mCells.incrementAndGet(MERGED); }
+
+		NotificationMetrics() { super(1); }
+
+		static final int MERGED = 0;
+	}
+
+	/** Counts of package probes, those answered locally, and probe storms detected */
+	static class ProbeMetrics extends Metrics {
+
+		void onProbe() { mCells.incrementAndGet(PROBES); }
+		void onAnsweredLocally() { mCells.incrementAndGet(ANSWERED_LOCALLY); }
+		void onStorm() { mCells.incrementAndGet(STORMS); }
+
+		ProbeMetrics() { super(3); }
+
+		static final int PROBES = 0, ANSWERED_LOCALLY = 1, STORMS = 2;
+	}
+
+	/** Count of package query downgrades and the estimated bytes saved */
+	static class DowngradeMetrics extends Metrics {
+
+		void onDowngrade(final long bytes_saved) {
+			mCells.incrementAndGet(DOWNGRADES);
+			if (bytes_saved > 0) mCells.addAndGet(BYTES_SAVED, bytes_saved);
+		}
+
+		DowngradeMetrics() { super(2); }
+
+		static final int DOWNGRADES = 0, BYTES_SAVED = 1;
+	}
+}
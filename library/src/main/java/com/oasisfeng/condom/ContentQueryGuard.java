@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.IContentProvider;
+import android.database.CrossProcessCursor;
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Guard of queries to content provider, measuring the row count, window fills and latency of each query per authority,
+ * and optionally enforcing the row limit and projection allowlist. Violations are written to EventLog.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class ContentQueryGuard {
+
+	/** Wrap the provider acquired for the authority, to intercept its queries. */
+	IContentProvider wrap(final IContentProvider provider, final String authority) {
+		return (IContentProvider) Proxy.newProxyInstance(mCondom.mBase.getClassLoader(), new Class[] { IContentProvider.class },
+				new GuardedProvider(provider, authority, CondomStats.getQueryMetrics(mTag, authority)));
+	}
+
+	/** @return the original provider if wrapped, which is required by release methods of {@link android.content.ContentResolver}. */
+	static IContentProvider unwrap(final IContentProvider provider) {
+		if (provider == null || ! Proxy.isProxyClass(provider.getClass())) return provider;
+		final InvocationHandler handler = Proxy.getInvocationHandler(provider);
+		return handler instanceof GuardedProvider ? ((GuardedProvider) handler).mProvider : provider;
+	}
+
+	ContentQueryGuard(final CondomCore condom, final String tag, final int max_rows, final @Nullable String[] allowed_columns) {
+		mCondom = condom; mTag = tag; mMaxRows = max_rows;
+		mAllowedColumns = allowed_columns != null ? new HashSet<>(Arrays.asList(allowed_columns)) : null;
+	}
+
+	private final CondomCore mCondom;
+	private final String mTag;
+	private final int mMaxRows;						// 0 for unlimited
+	private final @Nullable Set<String> mAllowedColumns;
+
+	private class GuardedProvider implements InvocationHandler {
+
+		@Override public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			if (! "query".equals(method.getName())) return invokeProvider(method, args);
+			// Cursor query(String callingPkg, [R+ String attributionTag | S+ AttributionSource], Uri url, String[] projection, ...)
+			int uri_index = -1;
+			final Class<?>[] param_types = method.getParameterTypes();
+			for (int i = 0; i < param_types.length - 1; i ++)
+				if (param_types[i] == Uri.class) { uri_index = i; break; }
+			if (uri_index >= 0 && param_types[uri_index + 1] == String[].class) {
+				final String[] projection = (String[]) args[uri_index + 1];
+				if (! isProjectionAllowed(projection)) {
+					mMetrics.onViolation();
+					mCondom.mEventLog.write(CondomCore.CondomEvent.QUERY_VIOLATION, mTag, mAuthority,
+							"projection:" + (projection != null ? Arrays.toString(projection) : "*"), null);
+					if (! mCondom.mDryRun) return null;
+				}
+			}
+
+			final long start = System.nanoTime();
+			final Cursor cursor = (Cursor) invokeProvider(method, args);
+			if (cursor == null) return null;
+			final int count = cursor.getCount();	// Also force the first window to be filled, as ContentResolver.query() does.
+			mMetrics.onQuery(count, System.nanoTime() - start);
+			int limit = count;
+			if (mMaxRows > 0 && count > mMaxRows) {
+				mMetrics.onViolation();
+				mCondom.mEventLog.write(CondomCore.CondomEvent.QUERY_VIOLATION, mTag, mAuthority, "rows:" + count, null);
+				if (! mCondom.mDryRun) limit = mMaxRows;
+			}
+			return new GuardedCursor(cursor, limit, mMetrics);
+		}
+
+		private boolean isProjectionAllowed(final @Nullable String[] projection) {
+			if (mAllowedColumns == null) return true;
+			if (projection == null) return false;		// All columns
+			for (final String column : projection) if (! mAllowedColumns.contains(column)) return false;
+			return true;
+		}
+
+		private Object invokeProvider(final Method method, final Object[] args) throws Throwable {
+			try {
+				return method.invoke(mProvider, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		GuardedProvider(final IContentProvider provider, final String authority, final CondomStats.QueryMetrics metrics) {
+			mProvider = provider; mAuthority = authority; mMetrics = metrics;
+		}
+
+		final IContentProvider mProvider;
+		private final String mAuthority;
+		private final CondomStats.QueryMetrics mMetrics;
+	}
+
+	/** Cursor with rows beyond the limit invisible, counting the window fills. All moves are routed through {@link #moveToPosition(int)}. */
+	private static class GuardedCursor extends CrossProcessCursorWrapper {
+
+		@Override public int getCount() { return mLimit; }
+		@Override public int getPosition() { return Math.min(super.getPosition(), mLimit); }
+
+		@Override public boolean moveToPosition(final int position) {
+			if (position >= mLimit) {
+				super.moveToPosition(super.getCount());		// After the last
+				return false;
+			}
+			final boolean result = super.moveToPosition(position);
+			final CursorWindow window = getWindow();
+			if (window != null && window != mLastWindow) {
+				mMetrics.onWindowFilled();
+				mLastWindow = window;
+			}
+			return result;
+		}
+
+		@Override public boolean move(final int offset) { return moveToPosition(getPosition() + offset); }
+		@Override public boolean moveToFirst() { return moveToPosition(0); }
+		@Override public boolean moveToLast() { return moveToPosition(mLimit - 1); }
+		@Override public boolean moveToNext() { return moveToPosition(getPosition() + 1); }
+		@Override public boolean moveToPrevious() { return moveToPosition(getPosition() - 1); }
+		@Override public boolean isLast() { return mLimit > 0 && getPosition() == mLimit - 1; }
+		@Override public boolean isAfterLast() { return mLimit == 0 || getPosition() >= mLimit; }
+
+		@Override public void fillWindow(final int position, final CursorWindow window) {
+			super.fillWindow(position, window);
+			mMetrics.onWindowFilled();
+		}
+
+		GuardedCursor(final Cursor cursor, final int limit, final CondomStats.QueryMetrics metrics) {
+			super(cursor);
+			mLimit = limit; mMetrics = metrics;
+			mLastWindow = cursor instanceof CrossProcessCursor ? ((CrossProcessCursor) cursor).getWindow() : null;
+			if (mLastWindow != null) mMetrics.onWindowFilled();
+		}
+
+		private final int mLimit;
+		private final CondomStats.QueryMetrics mMetrics;
+		private @Nullable CursorWindow mLastWindow;
+	}
+}
@@ -35,12 +35,14 @@ import androidx.annotation.RequiresApi;
 import androidx.annotation.RestrictTo;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static android.os.Build.VERSION_CODES.HONEYCOMB;
 import static android.os.Build.VERSION_CODES.KITKAT;
 import static android.os.Build.VERSION_CODES.N;
 import static android.os.Build.VERSION_CODES.P;
+import static android.os.Build.VERSION_CODES.R;
 
 /**
  * Delegation wrapper of {@link ContentResolver}
@@ -79,6 +81,10 @@ class ContentResolverWrapper extends ContentResolver {
 		mBase.notifyChange(uri, observer, flags);
 	}
 
+	@Override @RequiresApi(R) public void notifyChange(@NonNull Collection<Uri> uris, @Nullable ContentObserver observer, int flags) {
+		mBase.notifyChange(uris, observer, flags);
+	}
+
 	@Override @RequiresApi(KITKAT) public void takePersistableUriPermission(@NonNull Uri uri, int modeFlags) {
 		mBase.takePersistableUriPermission(uri, modeFlags);
 	}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Intent;
+import android.util.EventLog;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writer of condom events to EventLog (and Logcat if debuggable), either synchronously or asynchronously in batches.
+ *
+ * <p>In asynchronous mode, the caller only claims a slot in a lock-free bounded ring buffer and fills it with a compact record.
+ * Records are formatted and written by the shared background thread. If the ring buffer is full, the event is either dropped or
+ * written synchronously, as configured. Both are counted. The intent description written asynchronously does not indicate
+ * the presence of extras, which is too costly to check in place.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class EventLogWriter {
+
+	/** @param extra the last parameter of event, or null to use the description of <code>intent</code> instead. */
+	void write(final CondomCore.CondomEvent event, final String tag, final String arg, final @Nullable String extra, final @Nullable Intent intent) {
+		if (mSlots == null || ! enqueue(event, tag, arg, extra, intent)) writeNow(event, tag, arg, extra != null ? extra : String.valueOf(intent));
+	}
+
+	private void writeNow(final CondomCore.CondomEvent event, final String tag, final String arg, final String extra) {
+		EventLog.writeEvent(CondomCore.EVENT_TAG + event.ordinal(), mPackageName, tag, arg, extra);
+		if (mLogcat && event != CondomCore.CondomEvent.CONCERN) Log.d(CondomCore.asLogTag(tag), event.name() + " [" + arg + ", " + extra + "]");
+	}
+
+	private boolean enqueue(final CondomCore.CondomEvent event, final String tag, final String arg, final @Nullable String extra, final @Nullable Intent intent) {
+		final Record[] slots = mSlots;
+		Record slot;
+		for (;;) {		// Claim a slot, as in the bounded MPMC queue by Dmitry Vyukov.
+			final long position = mHead.get();
+			slot = slots[(int) (position & mMask)];
+			final long diff = slot.sequence - position;
+			if (diff == 0) {
+				if (mHead.compareAndSet(position, position + 1)) break;
+			} else if (diff < 0) {		// Full
+				if (mDropOnOverflow) mNumDropped.incrementAndGet();
+				else mNumWrittenThrough.incrementAndGet();
+				return mDropOnOverflow;
+			}
+		}
+		slot.event = event; slot.tag = tag; slot.arg = arg; slot.extra = extra;
+		if (intent != null && extra == null) {
+			slot.intent = intent.cloneFilter();		// Much cheaper than toString(). Extras are never in the description except the presence.
+			slot.intent_flags = intent.getFlags();
+		}
+		slot.sequence = slot.sequence + 1;		// Publish
+		if (mFlushScheduled.compareAndSet(false, true)) BackgroundThread.postDelayed(mFlusher, BATCH_DELAY_MILLIS);
+		return true;
+	}
+
+	private void flush() {
+		mFlushScheduled.set(false);		// Reset before draining, so that any record published later will schedule another flush.
+		final Record[] slots = mSlots;
+		if (slots == null) return;
+		for (;;) {
+			final Record slot = slots[(int) (mTail & mMask)];
+			if (slot.sequence != mTail + 1) break;		// Empty, or not yet published
+			final Intent intent = slot.intent;
+			final String extra;
+			if (intent != null) extra = intent.setFlags(slot.intent_flags).toString();
+			else extra = String.valueOf(slot.extra);
+			final CondomCore.CondomEvent event = slot.event; final String tag = slot.tag, arg = slot.arg;
+			slot.event = null; slot.tag = slot.arg = slot.extra = null; slot.intent = null;
+			slot.sequence = mTail + slots.length;		// Release the slot to producers.
+			mTail ++;
+			writeNow(event, tag, arg, extra);
+			mNumWrittenAsync ++;
+		}
+		final long dropped = mNumDropped.get();
+		if (dropped != mNumDroppedReported) {
+			Log.w("Condom", (dropped - mNumDroppedReported) + " events dropped due to overflow of event log buffer");
+			mNumDroppedReported = dropped;
+		}
+	}
+
+	long getNumWrittenAsync() { return mNumWrittenAsync; }
+	long getNumDropped() { return mNumDropped.get(); }
+	long getNumWrittenThrough() { return mNumWrittenThrough.get(); }
+
+	/** @param capacity the capacity of ring buffer (rounded up to power of 2) for asynchronous writing, or 0 for synchronous writing. */
+	EventLogWriter(final String pkg, final boolean logcat, final int capacity, final boolean drop_on_overflow) {
+		mPackageName = pkg;
+		mLogcat = logcat;
+		mDropOnOverflow = drop_on_overflow;
+		if (capacity <= 0) {
+			mSlots = null;
+			mMask = 0;
+			return;
+		}
+		int size = 2;
+		while (size < capacity) size <<= 1;
+		mSlots = new Record[size];
+		for (int i = 0; i < size; i ++) mSlots[i] = new Record(i);
+		mMask = size - 1;
+	}
+
+	private final String mPackageName;
+	private final boolean mLogcat;
+	private final boolean mDropOnOverflow;
+	private final @Nullable Record[] mSlots;
+	private final long mMask;
+	private final AtomicLong mHead = new AtomicLong();
+	private long mTail;		// Only accessed by the background thread
+	private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+	private final Runnable mFlusher = this::flush;
+	private volatile long mNumWrittenAsync;
+	private final AtomicLong mNumDropped = new AtomicLong();
+	private final AtomicLong mNumWrittenThrough = new AtomicLong();
+	private long mNumDroppedReported;
+
+	@VisibleForTesting static final long BATCH_DELAY_MILLIS = 200;
+
+	private static class Record {
+		Record(final long sequence) { this.sequence = sequence; }
+		volatile long sequence;
+		CondomCore.CondomEvent event;
+		String tag;
+		String arg;
+		@Nullable String extra;
+		@Nullable Intent intent;
+		int intent_flags;
+	}
+}
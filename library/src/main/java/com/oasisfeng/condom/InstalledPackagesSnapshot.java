@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide snapshot of installed packages, fetched in bulk at once, and invalidated upon package changes.
+ *
+ * <p>Lists of installed packages or applications (per flags) are refreshed at most once per interval, only if packages have changed
+ * since last fetch, or periodically if package changes could not be monitored in current process.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class InstalledPackagesSnapshot {
+
+	interface Loader { List<PackageInfo> load(); }
+
+	interface ListLoader<T> { List<T> load(int flags); }
+
+	static InstalledPackagesSnapshot get() { return sInstance; }
+
+	/** @return the names of installed packages, or null if package changes could not be monitored in current process. */
+	@Nullable Set<String> getPackageNames(final Context context, final Loader loader) {
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		if (generation == PackageChangeMonitor.UNTRACKED) return null;
+		synchronized (this) {
+			if (mPackageNames != null && mGeneration == generation) return mPackageNames;
+		}
+		final List<PackageInfo> packages = loader.load();		// Outside the lock, duplicate loading by concurrent callers is harmless.
+		final Set<String> names = new HashSet<>(packages.size() * 2);
+		for (final PackageInfo pkg : packages) names.add(pkg.packageName);
+		final Set<String> result = Collections.unmodifiableSet(names);
+		synchronized (this) {
+			mPackageNames = result;
+			mGeneration = generation;
+		}
+		return result;
+	}
+
+	/**
+	 * @return a modifiable list of installed packages, which could be up to <code>refresh_interval</code> stale.
+	 *         Items in it are shared with the snapshot, and must be {@link #copy(List, Parcelable.Creator) copied} before handed out.
+	 */
+	List<PackageInfo> getInstalledPackages(final Context context, final int flags, final long refresh_interval, final ListLoader<PackageInfo> loader) {
+		return getInstalled(context, PackageInfo.class, flags, refresh_interval, loader);
+	}
+
+	/**
+	 * @return a modifiable list of installed applications, which could be up to <code>refresh_interval</code> stale.
+	 *         Items in it are shared with the snapshot, and must be {@link #copy(List, Parcelable.Creator) copied} before handed out.
+	 */
+	List<ApplicationInfo> getInstalledApplications(final Context context, final int flags, final long refresh_interval, final ListLoader<ApplicationInfo> loader) {
+		return getInstalled(context, ApplicationInfo.class, flags, refresh_interval, loader);
+	}
+
+	@SuppressWarnings("unchecked") private <T> List<T> getInstalled(final Context context, final Class<T> type, final int flags, final long refresh_interval,
+																	final ListLoader<T> loader) {
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		final long now = SystemClock.elapsedRealtime();
+		// Packages vary with the user (app UID per user) and the package manager in use (e.g. a wrapped one), while all contexts of a user share one.
+		final String key = type.getName() + ':' + flags + '@' + context.getApplicationInfo().uid + '/' + context.getPackageManager().getClass().getName();
+		Entry entry;
+		synchronized (mLists) {
+			entry = mLists.get(key);
+			if (entry != null && ((generation == entry.generation && generation != PackageChangeMonitor.UNTRACKED) || now - entry.time < refresh_interval))
+				return new ArrayList<>((List<T>) entry.list);
+		}
+		final List<T> list = loader.load(flags);
+		if (list == null) return null;
+		entry = new Entry(new ArrayList<>(list), now, generation);
+		synchronized (mLists) { mLists.put(key, entry); }
+		return new ArrayList<>(list);
+	}
+
+	/** Copy the items shared with the snapshot, only those the caller actually gets (e.g. after filtering), instead of the whole list. */
+	static <T extends Parcelable> List<T> copy(final List<T> list, final Parcelable.Creator<T> creator) {
+		final List<T> copy = new ArrayList<>(list.size());
+		for (final T item : list) copy.add(PackageInfoCache.copy(item, creator));
+		return copy;
+	}
+
+	private final Map<String, Entry> mLists = new HashMap<>();
+
+	private static class Entry {
+		Entry(final List<?> list, final long time, final int generation) { this.list = list; this.time = time; this.generation = generation; }
+		final List<?> list;
+		final long time;
+		final int generation;
+	}
+
+	private @Nullable Set<String> mPackageNames;
+	private int mGeneration;
+
+	private static final InstalledPackagesSnapshot sInstance = new InstalledPackagesSnapshot();
+}
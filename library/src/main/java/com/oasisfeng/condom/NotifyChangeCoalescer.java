@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesce notifications of content change with equal arguments within a window, and emit only one of them.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class NotifyChangeCoalescer {
+
+	/**
+	 * @param key the arguments of notification, as key for coalescing.
+	 * @param emission the actual notification, run on background thread (or the current looper if window is 0) once the window closes.
+	 * @return false if not coalesced (no looper on current thread while window is 0), and the caller should notify the change by itself.
+	 */
+	boolean coalesce(final List<Object> key, final Runnable emission) {
+		Handler handler = null;
+		if (mWindow <= 0 && (handler = mLooperHandler.get()) == null) {
+			final Looper looper = Looper.myLooper();
+			if (looper == null) return false;
+			mLooperHandler.set(handler = new Handler(looper));
+		}
+		final Object pending_key = handler != null ? Arrays.asList(key, handler.getLooper()) : key;	// Only merged within the same looper
+		synchronized (mPending) {
+			if (! mPending.add(pending_key)) {
+				mMetrics.onMerged();
+				return true;
+			}
+		}
+		final Runnable flush = () -> {
+			synchronized (mPending) { mPending.remove(pending_key); }
+			emission.run();
+		};
+		if (handler != null) handler.post(flush);		// Within the current looper frame
+		else BackgroundThread.postDelayed(flush, mWindow);
+		return true;
+	}
+
+	NotifyChangeCoalescer(final long window_millis, final CondomStats.NotificationMetrics metrics) { mWindow = window_millis; mMetrics = metrics; }
+
+	private final long mWindow;
+	private final CondomStats.NotificationMetrics mMetrics;
+	private final Set<Object> mPending = new HashSet<>();
+	private final ThreadLocal<Handler> mLooperHandler = new ThreadLocal<>();		// Handler of the looper on each thread, if window is 0
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import androidx.annotation.Keep;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache for verdicts of {@link OutboundJudge}, keyed by {@link OutboundType}, target package and optionally the intent action.
+ *
+ * <p>The cache is only correct if the verdict of the judge depends on nothing but the keys above, otherwise {@link #invalidate()}
+ * should be called whenever the judge may change its mind. Do not share one instance among options with different judges.
+ *
+ * <p>It takes effect once set via {@link CondomOptions#setOutboundJudgeCache(OutboundJudgeCache)}.
+ *
+ * Created by agent on 2026/10/17.
+ */
+@Keep
+public class OutboundJudgeCache {
+
+	/**
+	 * @param max_entries the maximum number of verdicts to keep, the least recently used one is evicted when exceeded.
+	 * @param ttl_millis how long a cached verdict stays valid, in milliseconds.
+	 * @param keyed_by_action whether the intent action should also be part of the key, if the judge decides by it.
+	 */
+	public OutboundJudgeCache(final int max_entries, final long ttl_millis, final boolean keyed_by_action) {
+		if (max_entries <= 0) throw new IllegalArgumentException("max_entries must be positive");
+		mMaxEntries = max_entries;
+		mTtl = ttl_millis;
+		mKeyedByAction = keyed_by_action;
+	}
+
+	/** Drop all cached verdicts. */
+	public void invalidate() {
+		synchronized (mVerdicts) { mVerdicts.clear(); }
+	}
+
+	/** Drop all cached verdicts targeting the specified package. */
+	public void invalidate(final String pkg) {
+		synchronized (mVerdicts) {
+			for (final Iterator<Key> iterator = mVerdicts.keySet().iterator(); iterator.hasNext(); )
+				if (iterator.next().pkg.equals(pkg)) iterator.remove();
+		}
+	}
+
+	public long getHitCount() { synchronized (mVerdicts) { return mHits; } }
+	public long getMissCount() { synchronized (mVerdicts) { return mMisses; } }
+
+	boolean shouldAllow(final OutboundJudge judge, final OutboundType type, final @Nullable Intent intent, final String target_pkg) {
+		final Key key = new Key(type, target_pkg, mKeyedByAction && intent != null ? intent.getAction() : null);
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (mVerdicts) {
+			final Verdict verdict = mVerdicts.get(key);
+			if (verdict != null && now < verdict.expiry) {
+				mHits ++;
+				return verdict.allowed;
+			}
+			mMisses ++;
+		}
+		final boolean allowed = judge.shouldAllow(type, intent, target_pkg);	// Judge outside the lock, in case it is slow.
+		synchronized (mVerdicts) { mVerdicts.put(key, new Verdict(allowed, now + mTtl)); }
+		return allowed;
+	}
+
+	private final Map<Key, Verdict> mVerdicts = new LinkedHashMap<Key, Verdict>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<Key, Verdict> eldest) { return size() > mMaxEntries; }
+	};
+	private final int mMaxEntries;
+	private final long mTtl;
+	private final boolean mKeyedByAction;
+	private long mHits;
+	private long mMisses;
+
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return type == that.type && pkg.equals(that.pkg) && (action == null ? that.action == null : action.equals(that.action));
+		}
+
+		@Override public int hashCode() { return hash; }
+
+		Key(final OutboundType type, final String pkg, final @Nullable String action) {
+			this.type = type; this.pkg = pkg; this.action = action;
+			hash = 31 * (31 * type.hashCode() + pkg.hashCode()) + (action != null ? action.hashCode() : 0);
+		}
+
+		final OutboundType type;
+		final String pkg;
+		final @Nullable String action;
+		private final int hash;
+	}
+
+	private static class Verdict {
+		Verdict(final boolean allowed, final long expiry) { this.allowed = allowed; this.expiry = expiry; }
+		final boolean allowed;
+		final long expiry;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import androidx.annotation.Keep;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Declarative rules for outbound requests, as an auditable alternative to {@link OutboundJudge}.
+ *
+ * <p>Rules are matched by specificity: component first, then package, package prefix (longer first) and intent action.
+ * The first level with matching rule decides, and deny wins over allow on the same level. If no rule matches, the default applies.
+ *
+ * <p>Package prefix is matched on the boundary of name segments, e.g. "com.example" matches "com.example" and "com.example.sdk",
+ * but not "com.examples".
+ *
+ * <p>Rules without any {@link OutboundType} specified apply to all types. The rules are compiled into lookup tables once set via
+ * {@link CondomOptions#setOutboundPolicy(OutboundPolicy)}, later changes to this instance will not take effect.
+ *
+ * Created by agent on 2026/10/17.
+ */
+@Keep
+public class OutboundPolicy {
+
+	public OutboundPolicy allowComponent(final ComponentName component, final OutboundType... types) { return add(mComponents, component, types, true); }
+	public OutboundPolicy denyComponent(final ComponentName component, final OutboundType... types) { return add(mComponents, component, types, false); }
+
+	public OutboundPolicy allowPackage(final String pkg, final OutboundType... types) { return add(mPackages, pkg, types, true); }
+	public OutboundPolicy denyPackage(final String pkg, final OutboundType... types) { return add(mPackages, pkg, types, false); }
+
+	public OutboundPolicy allowPackagePrefix(final String prefix, final OutboundType... types) { return add(mPrefixes, trimPrefix(prefix), types, true); }
+	public OutboundPolicy denyPackagePrefix(final String prefix, final OutboundType... types) { return add(mPrefixes, trimPrefix(prefix), types, false); }
+
+	public OutboundPolicy allowAction(final String action, final OutboundType... types) { return add(mActions, action, types, true); }
+	public OutboundPolicy denyAction(final String action, final OutboundType... types) { return add(mActions, action, types, false); }
+
+	/** Whether outbound request matching no rule should be allowed. (default: true) */
+	public OutboundPolicy setDefaultAllowed(final boolean allowed) { mDefaultAllowed = allowed; return this; }
+
+	private static String trimPrefix(final String prefix) {
+		return prefix.endsWith(".") ? prefix.substring(0, prefix.length() - 1) : prefix;
+	}
+
+	private <K> OutboundPolicy add(final Map<K, Integer> rules, final K key, final OutboundType[] types, final boolean allow) {
+		int bits = 0;
+		if (types.length == 0) bits = ALL_TYPES;
+		else for (final OutboundType type : types) bits |= 1 << type.ordinal();
+		if (! allow) bits <<= DENY_SHIFT;
+		final Integer existent = rules.get(key);
+		rules.put(key, existent != null ? existent | bits : bits);
+		return this;
+	}
+
+	Compiled compile() { return new Compiled(this); }
+
+	private final Map<ComponentName, Integer> mComponents = new HashMap<>();
+	private final Map<String, Integer> mPackages = new HashMap<>();
+	private final Map<String, Integer> mPrefixes = new HashMap<>();
+	private final Map<String, Integer> mActions = new HashMap<>();
+	private boolean mDefaultAllowed = true;
+
+	private static final int DENY_SHIFT = 16;		// Bits of allowed types in lower half and denied types in upper half.
+	private static final int ALL_TYPES = (1 << OutboundType.values().length) - 1;
+
+	/** The immutable lookup tables compiled from {@link OutboundPolicy} */
+	static class Compiled {
+
+		boolean shouldAllow(final OutboundType type, final @Nullable Intent intent, final String target_pkg) {
+			final int allow_bit = 1 << type.ordinal();
+			final ComponentName component = intent != null ? intent.getComponent() : null;
+			if (component != null && ! mComponents.isEmpty()) {
+				final int verdict = decide(mComponents.get(component), allow_bit);
+				if (verdict != UNDECIDED) return verdict == ALLOWED;
+			}
+			int verdict = decide(mPackages.get(target_pkg), allow_bit);
+			if (verdict != UNDECIDED) return verdict == ALLOWED;
+			if (! mPrefixes.isEmpty()) for (int end = target_pkg.length(); end > 0; end = target_pkg.lastIndexOf('.', end - 1)) {
+				verdict = decide(mPrefixes.get(target_pkg.substring(0, end)), allow_bit);
+				if (verdict != UNDECIDED) return verdict == ALLOWED;
+			}
+			final String action = intent != null ? intent.getAction() : null;
+			if (action != null && ! mActions.isEmpty()) {
+				verdict = decide(mActions.get(action), allow_bit);
+				if (verdict != UNDECIDED) return verdict == ALLOWED;
+			}
+			return mDefaultAllowed;
+		}
+
+		private static int decide(final @Nullable Integer rule, final int allow_bit) {
+			if (rule == null) return UNDECIDED;
+			if ((rule & (allow_bit << DENY_SHIFT)) != 0) return DENIED;
+			return (rule & allow_bit) != 0 ? ALLOWED : UNDECIDED;
+		}
+
+		private Compiled(final OutboundPolicy policy) {
+			mComponents = new HashMap<>(policy.mComponents);
+			mPackages = new HashMap<>(policy.mPackages);
+			mPrefixes = new HashMap<>(policy.mPrefixes);
+			mActions = new HashMap<>(policy.mActions);
+			mDefaultAllowed = policy.mDefaultAllowed;
+		}
+
+		private final Map<ComponentName, Integer> mComponents;
+		private final Map<String, Integer> mPackages;
+		private final Map<String, Integer> mPrefixes;
+		private final Map<String, Integer> mActions;
+		private final boolean mDefaultAllowed;
+
+		private static final int UNDECIDED = 0, ALLOWED = 1, DENIED = 2;
+	}
+}
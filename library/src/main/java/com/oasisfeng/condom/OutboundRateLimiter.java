@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Token buckets per target package for each limited {@link OutboundType}.
+ *
+ * <p>Tokens are tracked in fixed point as credit, with one token worth a whole period, so that refilling takes only integer arithmetic.
+ *
+ * <p>Buckets idle for a whole period are full again, thus equivalent to absent ones. They are swept at most once per period.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class OutboundRateLimiter {
+
+	/** @return whether the request is within the limit, in which case one token is consumed. */
+	boolean tryAcquire(final OutboundType type, final String target_pkg) {
+		final Limit limit = mLimits[type.ordinal()];
+		if (limit == null) return true;
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (limit) {
+			if (now - limit.last_sweep >= limit.period) {
+				limit.last_sweep = now;
+				final Iterator<Bucket> iterator = limit.buckets.values().iterator();
+				while (iterator.hasNext()) if (now - iterator.next().time >= limit.period) iterator.remove();
+			}
+			Bucket bucket = limit.buckets.get(target_pkg);
+			if (bucket == null) limit.buckets.put(target_pkg, bucket = new Bucket(limit.max_credit, now));
+			else if (now > bucket.time) {
+				final long elapsed = now - bucket.time;		// Guard against overflow after a long idle time.
+				bucket.credit = elapsed >= limit.period ? limit.max_credit : Math.min(bucket.credit + elapsed * limit.max_requests, limit.max_credit);
+				bucket.time = now;
+			}
+			if (bucket.credit < limit.period) return false;
+			bucket.credit -= limit.period;
+			return true;
+		}
+	}
+
+	/** @param limits max requests and period in milliseconds for each {@link OutboundType} by ordinal, or null if not limited. */
+	OutboundRateLimiter(final long[][] limits) {
+		mLimits = new Limit[limits.length];
+		for (int i = 0; i < limits.length; i ++)
+			if (limits[i] != null) mLimits[i] = new Limit((int) limits[i][0], limits[i][1]);
+	}
+
+	private final @Nullable Limit[] mLimits;
+
+	private static class Limit {
+		Limit(final int max_requests, final long period) { this.max_requests = max_requests; this.period = period; max_credit = max_requests * period; }
+		final int max_requests;
+		final long period;
+		final long max_credit;
+		final Map<String, Bucket> buckets = new HashMap<>();
+		long last_sweep;
+	}
+
+	private static class Bucket {
+		Bucket(final long credit, final long time) { this.credit = credit; this.time = time; }
+		long credit;
+		long time;
+	}
+}
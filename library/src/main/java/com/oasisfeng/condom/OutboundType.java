@@ -42,7 +42,10 @@ public enum OutboundType {
 	QUERY_SERVICES,
 	/** @see PackageManager#queryBroadcastReceivers(Intent, int) */
 	QUERY_RECEIVERS,
-	/** @see PackageManager#getPackagesForUid(int) */
+	/**
+	 * Either {@link PackageManager#getPackagesForUid(int)}, or {@link PackageManager#getInstalledPackages(int)} and
+	 * {@link PackageManager#getInstalledApplications(int)} if {@link CondomOptions#filterInstalledPackages(boolean) filtered}
+	 */
 	QUERY_PACKAGES,
 	/** @see PackageManager#getApplicationInfo(String, int)  */
 	GET_APPLICATION_INFO,
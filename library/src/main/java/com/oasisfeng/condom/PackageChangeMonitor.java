@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.TIRAMISU;
+
+/**
+ * Process-wide generation counter of package changes, for invalidation of caches built upon package states.
+ *
+ * <p>A cache entry is valid only if the generation it was built with still equals the current generation.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class PackageChangeMonitor {
+
+	/** Returned by {@link #getGeneration(Context)} if package changes could not be monitored, in which case nothing should be cached. */
+	static final int UNTRACKED = -1;
+
+	/** @return the current generation, or {@link #UNTRACKED} if package changes could not be monitored in current process. */
+	static int getGeneration(final Context context) {
+		if (! sRegistered) synchronized (PackageChangeMonitor.class) {
+			if (! sRegistered) sTracked = register(context);
+			sRegistered = true;
+		}
+		return sTracked ? sGeneration : UNTRACKED;
+	}
+
+	private static boolean register(final Context context) {
+		final IntentFilter filter = new IntentFilter(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+		filter.addAction(Intent.ACTION_PACKAGE_RESTARTED);		// Package is force-stopped
+		filter.addDataScheme("package");
+		final Context app_context = context.getApplicationContext();
+		try {
+			final BroadcastReceiver receiver = new BroadcastReceiver() { @Override public void onReceive(final Context c, final Intent intent) {
+				invalidate();
+			}};
+			if (SDK_INT >= TIRAMISU) (app_context != null ? app_context : context).registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+			else (app_context != null ? app_context : context).registerReceiver(receiver, filter);	// Package broadcasts are sent by system only.
+			return true;
+		} catch (final RuntimeException e) {	// ReceiverCallNotAllowedException or SecurityException (e.g. in isolated process)
+			Log.w("Condom", "Package changes cannot be monitored in current process", e);
+			return false;
+		}
+	}
+
+	@VisibleForTesting static void invalidate() {
+		sGeneration = (sGeneration + 1) & Integer.MAX_VALUE;	// Never reach UNTRACKED
+	}
+
+	private static volatile int sGeneration;
+	private static volatile boolean sRegistered;
+	private static boolean sTracked;
+
+	private PackageChangeMonitor() {}
+}
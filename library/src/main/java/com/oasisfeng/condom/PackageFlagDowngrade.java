@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.pm.PackageManager;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Strip heavy flags (e.g. {@link PackageManager#GET_SIGNATURES}, {@link PackageManager#GET_META_DATA}) from queries of single package,
+ * to reduce the size of binder parcel, which is mostly wasted if the caller just checks the existence of package.
+ *
+ * <p>Bytes saved are only estimated if enabled by {@link CondomOptions#sampleDowngradeSavings(boolean)}, by sampling: the full result
+ * is fetched without cache along with the downgraded one for the first downgrade of each set of stripped flags and then once every
+ * {@link #SAMPLE_INTERVAL} downgrades, and the difference of parcel sizes is averaged.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class PackageFlagDowngrade {
+
+	interface Loader<T extends Parcelable, E extends Throwable> { @Nullable T load(int flags) throws E; }
+
+	/** @param sampler the loader without cache, for sampling of full result only. */
+	<T extends Parcelable, E extends Throwable> T load(final String pkg, final int flags, final Loader<T, E> loader, final Loader<T, E> sampler) throws E {
+		final Integer stripped_for_package = mStrippedFlagsByPackage.get(pkg);
+		final int stripped = flags & (stripped_for_package != null ? stripped_for_package : mStrippedFlags);
+		if (stripped == 0) return loader.load(flags);
+		final T result = loader.load(flags & ~ stripped);
+		mMetrics.onDowngrade(mSampleSavings && result != null ? estimateBytesSaved(flags, stripped, result, sampler) : 0);
+		return result;
+	}
+
+	private <T extends Parcelable, E extends Throwable> long estimateBytesSaved(final int flags, final int stripped, final T result,
+																				 final Loader<T, E> sampler) throws E {
+		final long[] estimation;	// { average bytes saved, number of downgrades, number of samples }
+		synchronized (mEstimations) {
+			long[] existent = mEstimations.get(stripped);
+			if (existent == null) mEstimations.put(stripped, existent = new long[3]);
+			estimation = existent;
+			if (estimation[1] ++ % SAMPLE_INTERVAL != 0) return estimation[0];
+		}
+		final long saved = sampleBytesSaved(flags, result, sampler);
+		synchronized (mEstimations) {
+			if (saved >= 0) estimation[0] += (saved - estimation[0]) / ++ estimation[2];
+			return estimation[0];
+		}
+	}
+
+	/** @return the bytes saved by downgrade, or -1 if full result is unavailable. */
+	private static <T extends Parcelable, E extends Throwable> long sampleBytesSaved(final int flags, final T result, final Loader<T, E> sampler) throws E {
+		final T full;
+		try {
+			full = sampler.load(flags);
+		} catch (final Exception e) {		// Including the failure of transaction too large, which is exactly what downgrade prevents.
+			return -1;
+		}
+		return full == null ? -1 : Math.max(0, getParcelSize(full) - getParcelSize(result));
+	}
+
+	private static int getParcelSize(final Parcelable parcelable) {
+		final Parcel parcel = Parcel.obtain();
+		try {
+			parcelable.writeToParcel(parcel, 0);
+			return parcel.dataSize();
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	PackageFlagDowngrade(final int stripped_flags, final Map<String, Integer> stripped_flags_by_package, final boolean sample_savings, final String tag) {
+		mStrippedFlags = stripped_flags; mStrippedFlagsByPackage = stripped_flags_by_package; mSampleSavings = sample_savings;
+		mMetrics = CondomStats.getDowngradeMetrics(tag);
+	}
+
+	private final int mStrippedFlags;
+	private final Map<String, Integer> mStrippedFlagsByPackage;
+	private final boolean mSampleSavings;
+	private final CondomStats.DowngradeMetrics mMetrics;
+	private final SparseArray<long[]> mEstimations = new SparseArray<>();
+
+	private static final int SAMPLE_INTERVAL = 64;
+}
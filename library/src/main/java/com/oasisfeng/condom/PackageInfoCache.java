@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link PackageInfo} and {@link ApplicationInfo} keyed by package name and flags, invalidated upon package changes.
+ *
+ * <p>Entries are stored and returned as parceled copies, so that modification by caller never affects the cached ones.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class PackageInfoCache {
+
+	interface Loader<T> { T load() throws NameNotFoundException; }
+
+	PackageInfo getPackageInfo(final Context context, final String pkg, final int flags, final Loader<PackageInfo> loader) throws NameNotFoundException {
+		return get(context, PackageInfo.class, pkg, flags, loader, PackageInfo.CREATOR);
+	}
+
+	ApplicationInfo getApplicationInfo(final Context context, final String pkg, final int flags, final Loader<ApplicationInfo> loader) throws NameNotFoundException {
+		return get(context, ApplicationInfo.class, pkg, flags, loader, ApplicationInfo.CREATOR);
+	}
+
+	private <T extends Parcelable> T get(final Context context, final Class<T> type, final String pkg, final int flags, final Loader<T> loader,
+										 final Parcelable.Creator<T> creator) throws NameNotFoundException {
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		if (generation == PackageChangeMonitor.UNTRACKED) return loader.load();
+		final Key key = new Key(type, pkg, flags);
+		synchronized (mEntries) {
+			final Entry entry = mEntries.get(key);
+			if (entry != null && entry.generation == generation) return copy(type.cast(entry.value), creator);
+		}
+		final T value = loader.load();
+		if (value == null) return null;
+		final T copy = copy(value, creator);
+		synchronized (mEntries) { mEntries.put(key, new Entry(copy, generation)); }
+		return value;
+	}
+
+	static <T extends Parcelable> T copy(final T value, final Parcelable.Creator<T> creator) {
+		final Parcel parcel = Parcel.obtain();
+		try {
+			value.writeToParcel(parcel, 0);
+			parcel.setDataPosition(0);
+			return creator.createFromParcel(parcel);
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	PackageInfoCache(final int max_entries) {
+		mEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) { return size() > max_entries; }
+		};
+	}
+
+	private final Map<Key, Entry> mEntries;
+
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return type == that.type && flags == that.flags && pkg.equals(that.pkg);
+		}
+
+		@Override public int hashCode() { return (31 * type.hashCode() + pkg.hashCode()) * 31 + flags; }
+
+		Key(final Class<?> type, final String pkg, final int flags) { this.type = type; this.pkg = pkg; this.flags = flags; }
+
+		final Class<?> type;
+		final String pkg;
+		final int flags;
+	}
+
+	private static class Entry {
+		Entry(final Parcelable value, final int generation) { this.value = value; this.generation = generation; }
+		final Parcelable value;
+		final int generation;
+	}
+}
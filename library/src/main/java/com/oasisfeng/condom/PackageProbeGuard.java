@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+
+import java.util.Set;
+
+/**
+ * Detect the storm of probes for packages (e.g. by {@link PackageManager#getPackageInfo(String, int)}), and answer the subsequent probes
+ * for missing packages from the {@link InstalledPackagesSnapshot snapshot of installed packages} fetched in bulk once detected,
+ * instead of one IPC for each. The storm mode lasts for one window since detected, or ends earlier upon package changes.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class PackageProbeGuard {
+
+	/** @return whether the package is known to be missing, in which case the probe should fail without IPC. */
+	boolean isKnownMissing(final Context context, final String pkg, final int flags, final InstalledPackagesSnapshot.Loader loader) {
+		mMetrics.onProbe();
+		if ((flags & SNAPSHOT_INCOMPATIBLE_FLAGS) != 0) return false;
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		if (generation == PackageChangeMonitor.UNTRACKED) return false;
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (this) {
+			if (mStormGeneration != generation || now >= mStormEnd) {		// Not in storm mode (or expired)
+				if (now - mWindowStart >= mWindow) { mWindowStart = now; mNumProbes = 0; }
+				if (++ mNumProbes < mThreshold) return false;
+				mStormGeneration = generation;
+				mStormEnd = now + mWindow;
+				mWindowStart = now; mNumProbes = 0;		// Start over once expired
+				mMetrics.onStorm();
+			}
+		}
+		final Set<String> installed = InstalledPackagesSnapshot.get().getPackageNames(context, loader);
+		if (installed == null || installed.contains(pkg)) return false;
+		mMetrics.onAnsweredLocally();
+		return true;
+	}
+
+	PackageProbeGuard(final int threshold, final long window_millis, final String tag) {
+		mThreshold = threshold; mWindow = window_millis; mMetrics = CondomStats.getProbeMetrics(tag);
+	}
+
+	private final int mThreshold;
+	private final long mWindow;
+	private final CondomStats.ProbeMetrics mMetrics;
+	private long mWindowStart;
+	private int mNumProbes;
+	private int mStormGeneration = PackageChangeMonitor.UNTRACKED;
+	private long mStormEnd;
+
+	/** Flags to match packages not included in {@link PackageManager#getInstalledPackages(int)} with flags 0. */
+	@SuppressWarnings("deprecation") private static final int SNAPSHOT_INCOMPATIBLE_FLAGS = PackageManager.GET_UNINSTALLED_PACKAGES
+			| 0x00008000/* MATCH_DISABLED_UNTIL_USED_COMPONENTS */ | 0x00200000/* MATCH_FACTORY_ONLY */ | 0x00400000/* MATCH_ANY_USER */
+			| 0x20000000/* MATCH_HIDDEN_UNTIL_INSTALLED_COMPONENTS */ | 0x40000000/* MATCH_APEX */;
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of {@link ProviderInfo} resolved by authority, to save the extra IPC of resolution before every provider acquisition,
+ * shared by all condom instances in current process, including the one of {@link CondomProcess}.
+ *
+ * <p>Entries are invalidated upon package changes, and also expire after {@link #TTL_MILLIS}, since the stopped state of package
+ * changes silently once its process is started.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class ProviderResolutionCache {
+
+	static ProviderResolutionCache get() { return sInstance; }
+
+	@Nullable ProviderInfo resolve(final Context context, final String authority, final int flags) {
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		if (generation == PackageChangeMonitor.UNTRACKED) return context.getPackageManager().resolveContentProvider(authority, flags);
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (mEntries) {
+			final Entry entry = mEntries.get(authority);
+			if (entry != null && entry.flags == flags && entry.generation == generation && now < entry.expiry) return entry.provider;
+		}
+		final ProviderInfo provider = context.getPackageManager().resolveContentProvider(authority, flags);
+		synchronized (mEntries) { mEntries.put(authority, new Entry(provider, flags, generation, now + TTL_MILLIS)); }
+		return provider;
+	}
+
+	private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) { return size() > MAX_ENTRIES; }
+	};
+
+	private static class Entry {
+		Entry(final @Nullable ProviderInfo provider, final int flags, final int generation, final long expiry) {
+			this.provider = provider; this.flags = flags; this.generation = generation; this.expiry = expiry;
+		}
+		final @Nullable ProviderInfo provider;		// Null is also cached, since it is allowed without any further check.
+		final int flags;
+		final int generation;
+		final long expiry;
+	}
+
+	private static final ProviderResolutionCache sInstance = new ProviderResolutionCache();
+	private static final int MAX_ENTRIES = 64;
+	private static final long TTL_MILLIS = 30_000;
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of raw results of intent queries to {@link android.content.pm.PackageManager}, keyed by the filter of intent
+ * (as {@link Intent#filterEquals(Intent)}), intent flags and query flags. Results are stored and returned as deep copies, since they are
+ * filtered in place by policy afterwards, and the returned {@link ResolveInfo}s are mutable to the caller.
+ *
+ * <p>Entries are invalidated upon package changes, and also expire after {@link #TTL_MILLIS}, since the stopped state of package
+ * (which affects the results with {@link Intent#FLAG_EXCLUDE_STOPPED_PACKAGES}) changes silently once its process is started.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class QueryResultCache {
+
+	static final int QUERY_SERVICES = 0, QUERY_RECEIVERS = 1, RESOLVE_SERVICE = 2;
+
+	interface Loader { List<ResolveInfo> load(); }
+
+	List<ResolveInfo> get(final Context context, final int kind, final Intent intent, final int flags, final Loader loader) {
+		final int generation = PackageChangeMonitor.getGeneration(context);
+		if (generation == PackageChangeMonitor.UNTRACKED) return loader.load();
+		final Key key = new Key(kind, intent, flags);
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (mEntries) {
+			final Entry entry = mEntries.get(key);
+			if (entry != null && entry.generation == generation && now < entry.expiry) return copy(entry.result);
+		}
+		final List<ResolveInfo> result = loader.load();
+		if (result == null) return null;
+		synchronized (mEntries) { mEntries.put(key, new Entry(copy(result), generation, now + TTL_MILLIS)); }
+		return result;
+	}
+
+	private static List<ResolveInfo> copy(final List<ResolveInfo> result) {
+		final List<ResolveInfo> copy = new ArrayList<>(result.size());
+		for (final ResolveInfo info : result) copy.add(PackageInfoCache.copy(info, ResolveInfo.CREATOR));
+		return copy;
+	}
+
+	private final Map<Key, Entry> mEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) { return size() > MAX_ENTRIES; }
+	};
+
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return kind == that.kind && flags == that.flags && intent_flags == that.intent_flags && filter.equals(that.filter);
+		}
+
+		@Override public int hashCode() { return ((31 * filter.hashCode() + kind) * 31 + flags) * 31 + intent_flags; }
+
+		Key(final int kind, final Intent intent, final int flags) {
+			this.kind = kind; this.filter = new Intent.FilterComparison(intent.cloneFilter()); this.flags = flags; intent_flags = intent.getFlags();
+		}
+
+		final int kind;
+		final Intent.FilterComparison filter;
+		final int flags;
+		final int intent_flags;
+	}
+
+	private static class Entry {
+		Entry(final List<ResolveInfo> result, final int generation, final long expiry) { this.result = result; this.generation = generation; this.expiry = expiry; }
+		final List<ResolveInfo> result;
+		final int generation;
+		final long expiry;
+	}
+
+	private static final int MAX_ENTRIES = 64;
+	private static final long TTL_MILLIS = 30_000;
+}
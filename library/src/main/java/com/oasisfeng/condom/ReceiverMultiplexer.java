@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static android.os.Build.VERSION_CODES.O;
+
+/**
+ * Process-wide multiplexer of runtime broadcast receivers, sharing one real registration with the application context among receivers
+ * registered with identical filter (actions, categories and priority, without data), permission, scheduler and flags.
+ * Broadcasts are fanned out to all subscribed receivers on the scheduler, each with its own copy of the intent.
+ *
+ * <p>Like {@code LoadedApk}, one receiver can be registered with multiple filters, and is unregistered from all of them at once.
+ * Registering the same receiver with an identical filter again takes no effect, except returning the current sticky intent.
+ *
+ * <p>Since the pending result of broadcast is held by the shared receiver, {@link BroadcastReceiver#goAsync()} returns null for subscribers,
+ * and APIs of ordered broadcast (e.g. {@link BroadcastReceiver#setResultCode(int)}) or {@link BroadcastReceiver#isInitialStickyBroadcast()}
+ * do not work for them.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class ReceiverMultiplexer {
+
+	static ReceiverMultiplexer get() { return sInstance; }
+
+	/** @return whether the filter can be multiplexed. Filters with data specified are not supported. */
+	static boolean canMultiplex(final IntentFilter filter) {
+		return filter.countActions() > 0 && filter.countDataSchemes() == 0 && filter.countDataTypes() == 0;
+	}
+
+	/**
+	 * Register the receiver via the shared registration, or make one with the context if not yet present.
+	 *
+	 * @param context the context to register with, should be the application context, since the registration may outlive the caller.
+	 * @return the current sticky intent matching the filter, just as {@link Context#registerReceiver(BroadcastReceiver, IntentFilter)}.
+	 */
+	Intent register(final Context context, final BroadcastReceiver receiver, final IntentFilter filter,
+					final @Nullable String permission, final @Nullable Handler scheduler, final int flags) {
+		final Key key = new Key(filter, permission, scheduler, flags);
+		final SharedReceiver existent, shared;
+		final boolean duplicate;
+		synchronized (this) {
+			existent = mRegistrations.get(key);
+			shared = existent != null ? existent : new SharedReceiver(context, key, filter);
+			duplicate = ! shared.subscribers.add(receiver);
+			Set<SharedReceiver> subscriptions = mSubscriptions.get(receiver);
+			if (subscriptions == null) mSubscriptions.put(receiver, subscriptions = new HashSet<>());
+			subscriptions.add(shared);
+			if (existent == null) mRegistrations.put(key, shared);
+		}
+		if (existent != null) return deliverSticky(existent, receiver, ! duplicate);
+		try {
+			return registerReceiver(context, shared, filter, permission, scheduler, flags);
+		} catch (final RuntimeException e) {		// e.g. SecurityException for missing RECEIVER_EXPORTED flag on Android T+
+			synchronized (this) {
+				mRegistrations.remove(key);
+				for (final BroadcastReceiver subscriber : shared.subscribers) removeSubscription(subscriber, shared);
+				shared.subscribers.clear();
+			}
+			throw e;
+		}
+	}
+
+	/** Unregister the receiver from all shared registrations it subscribes to. @return false if it is not registered via this multiplexer. */
+	boolean unregister(final BroadcastReceiver receiver) {
+		final List<SharedReceiver> vacant = new ArrayList<>();
+		synchronized (this) {
+			final Set<SharedReceiver> subscriptions = mSubscriptions.remove(receiver);
+			if (subscriptions == null) return false;
+			for (final SharedReceiver shared : subscriptions) {
+				shared.subscribers.remove(receiver);
+				if (! shared.subscribers.isEmpty()) continue;
+				mRegistrations.remove(shared.key);
+				vacant.add(shared);
+			}
+		}
+		for (final SharedReceiver shared : vacant) shared.context.unregisterReceiver(shared);
+		return true;
+	}
+
+	private void removeSubscription(final BroadcastReceiver receiver, final SharedReceiver shared) {
+		final Set<SharedReceiver> subscriptions = mSubscriptions.get(receiver);
+		if (subscriptions != null && subscriptions.remove(shared) && subscriptions.isEmpty()) mSubscriptions.remove(receiver);
+	}
+
+	/** Late joiner gets the current sticky broadcast (if any) delivered just as a real registration does, but not for duplicate registration. */
+	private static Intent deliverSticky(final SharedReceiver shared, final BroadcastReceiver receiver, final boolean deliver) {
+		final Intent sticky = shared.context.registerReceiver(null, shared.filter);		// Just query, no actual registration.
+		if (sticky == null || ! deliver) return sticky;
+		final Handler handler = shared.key.scheduler != null ? shared.key.scheduler : new Handler(Looper.getMainLooper());
+		handler.post(() -> { if (shared.isSubscribed(receiver)) receiver.onReceive(shared.context, new Intent(sticky)); });
+		return sticky;
+	}
+
+	private static Intent registerReceiver(final Context context, final BroadcastReceiver receiver, final IntentFilter filter,
+										   final @Nullable String permission, final @Nullable Handler scheduler, final int flags) {
+		if (flags == 0) return context.registerReceiver(receiver, filter, permission, scheduler);
+		return registerReceiverWithFlags(context, receiver, filter, permission, scheduler, flags);
+	}
+
+	@RequiresApi(O) private static Intent registerReceiverWithFlags(final Context context, final BroadcastReceiver receiver, final IntentFilter filter,
+																	final @Nullable String permission, final @Nullable Handler scheduler, final int flags) {
+		return context.registerReceiver(receiver, filter, permission, scheduler, flags);
+	}
+
+	private final Map<Key, SharedReceiver> mRegistrations = new HashMap<>();
+	private final Map<BroadcastReceiver, Set<SharedReceiver>> mSubscriptions = new HashMap<>();
+
+	private static final ReceiverMultiplexer sInstance = new ReceiverMultiplexer();
+
+	private class SharedReceiver extends BroadcastReceiver {
+
+		@Override public void onReceive(final Context context, final Intent intent) {
+			final List<BroadcastReceiver> subscribers;
+			synchronized (ReceiverMultiplexer.this) { subscribers = new ArrayList<>(this.subscribers); }
+			RuntimeException first_exception = null;
+			for (final BroadcastReceiver subscriber : subscribers) try {
+				subscriber.onReceive(context, new Intent(intent));
+			} catch (final RuntimeException e) {	// Deliver to the rest before rethrowing, as if they were registered separately.
+				if (first_exception == null) first_exception = e;
+			}
+			if (first_exception != null) throw first_exception;
+		}
+
+		boolean isSubscribed(final BroadcastReceiver receiver) {
+			synchronized (ReceiverMultiplexer.this) { return subscribers.contains(receiver); }
+		}
+
+		SharedReceiver(final Context context, final Key key, final IntentFilter filter) {
+			this.context = context; this.key = key; this.filter = new IntentFilter(filter);
+		}
+
+		final Context context;
+		final Key key;
+		final IntentFilter filter;
+		final Set<BroadcastReceiver> subscribers = new LinkedHashSet<>();
+	}
+
+	/** Canonical form of registration, with actions and categories sorted. Scheduler is compared by identity. */
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return priority == that.priority && flags == that.flags && scheduler == that.scheduler && actions.equals(that.actions)
+					&& categories.equals(that.categories) && (permission == null ? that.permission == null : permission.equals(that.permission));
+		}
+
+		@Override public int hashCode() {
+			int hash = actions.hashCode();
+			hash = 31 * hash + categories.hashCode();
+			hash = 31 * hash + (permission != null ? permission.hashCode() : 0);
+			hash = 31 * hash + System.identityHashCode(scheduler);
+			return 31 * (31 * hash + priority) + flags;
+		}
+
+		Key(final IntentFilter filter, final @Nullable String permission, final @Nullable Handler scheduler, final int flags) {
+			actions = sorted(filter.actionsIterator());
+			categories = sorted(filter.categoriesIterator());
+			priority = filter.getPriority();
+			this.permission = permission; this.scheduler = scheduler; this.flags = flags;
+		}
+
+		private static List<String> sorted(final @Nullable Iterator<String> iterator) {
+			if (iterator == null || ! iterator.hasNext()) return Collections.emptyList();
+			final List<String> list = new ArrayList<>();
+			while (iterator.hasNext()) list.add(iterator.next());
+			Collections.sort(list);
+			return list;
+		}
+
+		final List<String> actions;
+		final List<String> categories;
+		final int priority;
+		final @Nullable String permission;
+		final @Nullable Handler scheduler;
+		final int flags;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide pool of service bindings, multiplexing connections to the same service (by {@link Intent#filterEquals(Intent)} and flags)
+ * onto one real binding with the application context. Callbacks are fanned out to all subscribed connections on the main thread,
+ * and the real binding is only unbound after the last subscriber unbinds. A connection may be bound to several pooled services,
+ * all of which are unbound by {@link Context#unbindService(ServiceConnection)}, as the real binding does.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class ServiceBindingPool {
+
+	static ServiceBindingPool get() { return sInstance; }
+
+	/** @param context the context to bind with, should be the application context, since the binding may outlive the caller. */
+	boolean bind(final Context context, final Intent intent, final ServiceConnection conn, final int flags) {
+		final Key key = new Key(intent, flags);
+		final SharedConnection shared;
+		synchronized (this) {
+			SharedConnection existent;
+			boolean interrupted = false;
+			while ((existent = mBindings.get(key)) != null && existent.pending) try {
+				wait();		// For the outcome of the real binding in progress. If it fails, try the real binding on our own.
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+			if (existent != null) {
+				if (existent.subscribers.contains(conn)) return true;		// Already bound, no-op as the real binding does.
+				subscribe(conn, existent);
+				if (existent.binder != null) {		// Already connected, deliver asynchronously as the real binding does.
+					final ComponentName name = existent.name; final IBinder binder = existent.binder;
+					mMainHandler.post(() -> { if (existent.isSubscribed(conn)) conn.onServiceConnected(name, binder); });
+				}
+				return true;
+			}
+			shared = new SharedConnection(context, key);
+			subscribe(conn, shared);
+			mBindings.put(key, shared);
+		}
+		boolean result = false;
+		try {
+			result = shared.context.bindService(intent, shared, flags);
+		} finally {
+			complete(shared, result);		// Also if thrown (e.g. SecurityException)
+		}
+		return result;
+	}
+
+	private void subscribe(final ServiceConnection conn, final SharedConnection shared) {
+		shared.subscribers.add(conn);
+		Set<SharedConnection> subscriptions = mSubscriptions.get(conn);
+		if (subscriptions == null) mSubscriptions.put(conn, subscriptions = new HashSet<>());
+		subscriptions.add(shared);
+	}
+
+	/** Settle the real binding in progress, rolled back if failed, then wake up the joiners waiting for it. */
+	private void complete(final SharedConnection shared, final boolean bound) {
+		synchronized (this) {
+			shared.pending = false;
+			notifyAll();
+			if (bound && ! shared.subscribers.isEmpty()) return;
+			mBindings.remove(shared.key);		// Failed, or already unbound by the only subscriber during binding.
+			for (final ServiceConnection subscriber : shared.subscribers) {
+				final Set<SharedConnection> subscriptions = mSubscriptions.get(subscriber);
+				if (subscriptions != null && subscriptions.remove(shared) && subscriptions.isEmpty()) mSubscriptions.remove(subscriber);
+			}
+			shared.subscribers.clear();
+		}
+		if (bound) shared.context.unbindService(shared);
+	}
+
+	/** @return false if the connection is not bound via this pool. */
+	boolean unbind(final ServiceConnection conn) {
+		final List<SharedConnection> released = new ArrayList<>();
+		synchronized (this) {
+			final Set<SharedConnection> subscriptions = mSubscriptions.remove(conn);
+			if (subscriptions == null) return false;
+			for (final SharedConnection shared : subscriptions) {
+				shared.subscribers.remove(conn);
+				if (! shared.subscribers.isEmpty() || shared.pending) continue;		// Binding in progress is released on completion.
+				mBindings.remove(shared.key);
+				released.add(shared);
+			}
+		}
+		for (final SharedConnection shared : released) shared.context.unbindService(shared);
+		return true;
+	}
+
+	private final Map<Key, SharedConnection> mBindings = new HashMap<>();
+	private final Map<ServiceConnection, Set<SharedConnection>> mSubscriptions = new HashMap<>();
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	private static final ServiceBindingPool sInstance = new ServiceBindingPool();
+
+	private class SharedConnection implements ServiceConnection {
+
+		@Override public void onServiceConnected(final ComponentName name, final IBinder service) {
+			for (final ServiceConnection subscriber : snapshot(name, service)) subscriber.onServiceConnected(name, service);
+		}
+
+		@Override public void onServiceDisconnected(final ComponentName name) {
+			for (final ServiceConnection subscriber : snapshot(name, null)) subscriber.onServiceDisconnected(name);
+		}
+
+		@Override public void onBindingDied(final ComponentName name) {
+			for (final ServiceConnection subscriber : snapshot(name, null)) subscriber.onBindingDied(name);
+		}
+
+		@Override public void onNullBinding(final ComponentName name) {
+			for (final ServiceConnection subscriber : snapshot(name, null)) subscriber.onNullBinding(name);
+		}
+
+		private List<ServiceConnection> snapshot(final ComponentName name, final @Nullable IBinder binder) {
+			synchronized (ServiceBindingPool.this) {
+				this.name = name; this.binder = binder;
+				return new ArrayList<>(subscribers);
+			}
+		}
+
+		boolean isSubscribed(final ServiceConnection conn) {
+			synchronized (ServiceBindingPool.this) { return subscribers.contains(conn); }
+		}
+
+		SharedConnection(final Context context, final Key key) { this.context = context; this.key = key; }
+
+		final Context context;
+		final Key key;
+		final List<ServiceConnection> subscribers = new ArrayList<>();
+		@Nullable ComponentName name;
+		@Nullable IBinder binder;
+		boolean pending = true;		// Until the real binding returns
+	}
+
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return flags == that.flags && intent.equals(that.intent);
+		}
+
+		@Override public int hashCode() { return 31 * intent.hashCode() + flags; }
+
+		Key(final Intent intent, final int flags) { this.intent = new Intent.FilterComparison(intent.cloneFilter()); this.flags = flags; }
+
+		final Intent.FilterComparison intent;
+		final int flags;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently started services, for coalescing requests to start service with intent equal in {@link Intent#filterEquals(Intent)}
+ * within the window since the last one actually started.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class StartServiceCoalescer {
+
+	/** @return the component started by previous equal intent within the window, or null if not found. */
+	@Nullable ComponentName lookup(final Intent intent) {
+		final long now = SystemClock.elapsedRealtime();
+		synchronized (mStarted) {
+			final Started started = mStarted.get(new Intent.FilterComparison(intent));
+			return started != null && now < started.expiry ? started.component : null;
+		}
+	}
+
+	void onStarted(final Intent intent, final ComponentName component) {
+		final Started started = new Started(component, SystemClock.elapsedRealtime() + mWindow);
+		final Intent.FilterComparison key = new Intent.FilterComparison(intent.cloneFilter());	// Copy in case caller changes it later.
+		synchronized (mStarted) { mStarted.put(key, started); }
+	}
+
+	StartServiceCoalescer(final long window_millis) { mWindow = window_millis; }
+
+	private final Map<Intent.FilterComparison, Started> mStarted = new LinkedHashMap<Intent.FilterComparison, Started>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<Intent.FilterComparison, Started> eldest) { return size() > MAX_ENTRIES; }
+	};
+	private final long mWindow;
+
+	private static final int MAX_ENTRIES = 64;
+
+	private static class Started {
+		Started(final ComponentName component, final long expiry) { this.component = component; this.expiry = expiry; }
+		final ComponentName component;
+		final long expiry;
+	}
+}
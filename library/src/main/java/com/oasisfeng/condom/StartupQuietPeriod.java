@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The quiet period during startup, in which allowed outbound requests are held and later replayed on the background thread.
+ * Requests equal in {@link Intent#filterEquals(Intent)} are coalesced into the latest one.
+ *
+ * <p>The period closes once the window elapses, or optionally the first activity is drawn, whichever comes first.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class StartupQuietPeriod {
+
+	interface Replay { void replay(Intent intent); }
+
+	/**
+	 * @param permission the receiver permission of broadcast, which is also part of the key for coalescing.
+	 * @return whether the request is deferred. The intent is copied, so caller is free to change it afterwards.
+	 */
+	boolean defer(final OutboundType type, final Intent intent, final @Nullable String permission, final Replay replay) {
+		if (mClosed) return false;
+		final Intent copy = new Intent(intent);
+		synchronized (mDeferred) {
+			if (mClosed) return false;
+			if (mDeferred.put(new Key(type, copy, permission), new Deferred(copy, replay)) != null) mNumCoalesced ++;
+		}
+		return true;
+	}
+
+	void close() {
+		synchronized (mDeferred) {
+			if (mClosed) return;
+			mClosed = true;
+		}
+		BackgroundThread.post(this::replay);
+	}
+
+	private void replay() {
+		final List<Deferred> deferred;
+		final int num_coalesced;
+		synchronized (mDeferred) {
+			deferred = new ArrayList<>(mDeferred.values());
+			mDeferred.clear();
+			num_coalesced = mNumCoalesced;
+		}
+		if (deferred.isEmpty()) return;
+		Log.i(mTag, "Replaying " + deferred.size() + " outbound requests deferred during startup, " + num_coalesced + " duplicates coalesced.");
+		for (final Deferred request : deferred) try {
+			request.replay.replay(request.intent);
+		} catch (final RuntimeException e) {
+			Log.w(mTag, "Error replaying deferred request: " + request.intent, e);
+		}
+	}
+
+	private void closeOnFirstActivityDrawn(final Context context) {
+		final Context app_context = context.getApplicationContext();
+		if (! (app_context instanceof Application)) return;
+		final Application app = (Application) app_context;
+		app.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+
+			@Override public void onActivityResumed(final Activity activity) {
+				app.unregisterActivityLifecycleCallbacks(this);
+				// Actions posted to view before attached are executed after the first traversal (including drawing) of its window.
+				activity.getWindow().getDecorView().post(StartupQuietPeriod.this::close);
+			}
+
+			@Override public void onActivityCreated(final Activity activity, final @Nullable Bundle savedInstanceState) {}
+			@Override public void onActivityStarted(final Activity activity) {}
+			@Override public void onActivityPaused(final Activity activity) {}
+			@Override public void onActivityStopped(final Activity activity) {}
+			@Override public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {}
+			@Override public void onActivityDestroyed(final Activity activity) {}
+		});
+	}
+
+	StartupQuietPeriod(final Context context, final long window_millis, final boolean until_first_activity_drawn, final String tag) {
+		mTag = tag;
+		BackgroundThread.postDelayed(this::close, window_millis);
+		if (until_first_activity_drawn) closeOnFirstActivityDrawn(context);
+	}
+
+	private final String mTag;
+	private final Map<Key, Deferred> mDeferred = new LinkedHashMap<>();		// Replay in the order of first occurrence.
+	private volatile boolean mClosed;
+	private int mNumCoalesced;
+
+	private static class Key {
+
+		@Override public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (! (o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return type == that.type && intent.equals(that.intent) && (permission == null ? that.permission == null : permission.equals(that.permission));
+		}
+
+		@Override public int hashCode() { return 31 * (31 * type.hashCode() + intent.hashCode()) + (permission != null ? permission.hashCode() : 0); }
+
+		Key(final OutboundType type, final Intent intent, final @Nullable String permission) {
+			this.type = type; this.intent = new Intent.FilterComparison(intent); this.permission = permission;
+		}
+
+		final OutboundType type;
+		final Intent.FilterComparison intent;
+		final @Nullable String permission;
+	}
+
+	private static class Deferred {
+		Deferred(final Intent intent, final Replay replay) { this.intent = intent; this.replay = replay; }
+		final Intent intent;
+		final Replay replay;
+	}
+}
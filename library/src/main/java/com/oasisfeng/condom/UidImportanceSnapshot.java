@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.SparseIntArray;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.oasisfeng.condom.util.BackgroundThread;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static android.app.ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND;
+import static android.app.ActivityManager.RunningAppProcessInfo.IMPORTANCE_SERVICE;
+import static android.content.Context.ACTIVITY_SERVICE;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.LOLLIPOP_MR1;
+
+/**
+ * Process-wide snapshot of running UIDs and their importance, shared by all condom instances in current process.
+ *
+ * <p>A snapshot younger than {@link #FRESH_MILLIS} is used as is. A stale one younger than {@link #MAX_STALE_MILLIS} is still used,
+ * while a refresh is started in background. Otherwise it is refreshed synchronously.
+ *
+ * Created by agent on 2026/10/17.
+ */
+class UidImportanceSnapshot {
+
+	static UidImportanceSnapshot get(final Context context) { return get(context, SystemClock.elapsedRealtime()); }
+
+	/** @param now the current time in {@link SystemClock#elapsedRealtime()} */
+	@VisibleForTesting static UidImportanceSnapshot get(final Context context, final long now) {
+		final UidImportanceSnapshot snapshot = sSnapshot;
+		final long age = snapshot != null ? now - snapshot.mTime : Long.MAX_VALUE;
+		if (age > MAX_STALE_MILLIS) return refresh(context, now);
+		if (age > FRESH_MILLIS && sRefreshing.compareAndSet(false, true)) {
+			final Context app_context = context.getApplicationContext();	// Avoid holding activity or other short-lived context.
+			final Context context4refresh = app_context != null ? app_context : context;
+			BackgroundThread.post(() -> {
+				try { refresh(context4refresh, SystemClock.elapsedRealtime()); } finally { sRefreshing.set(false); }
+			});
+		}
+		return snapshot;
+	}
+
+	boolean isUidNotBackground(final int uid) {
+		return mImportances.get(uid, NOT_RUNNING) < IMPORTANCE_BACKGROUND;		// Same UID does not guarantee same process. This is spared intentionally.
+	}
+
+	private static UidImportanceSnapshot refresh(final Context context, final long now) {
+		final UidImportanceSnapshot snapshot = new UidImportanceSnapshot((ActivityManager) context.getSystemService(ACTIVITY_SERVICE), now);
+		sSnapshot = snapshot;
+		return snapshot;
+	}
+
+	private UidImportanceSnapshot(final @Nullable ActivityManager am, final long time) {
+		mTime = time;
+		if (am == null) return;		// Fallback: Always treat as background app, since app with same UID will not reach here.
+		if (SDK_INT >= LOLLIPOP_MR1) {		// getRunningAppProcesses() is limited on Android 5.1+.
+			final List<ActivityManager.RunningServiceInfo> services = am.getRunningServices(64);	// Too many services are never healthy, thus ignored intentionally.
+			// Only running process is qualified, although getRunningServices() may not include all running app processes.
+			if (services != null) for (final ActivityManager.RunningServiceInfo service : services)
+				if (service.pid != 0) put(service.uid, IMPORTANCE_SERVICE);
+		} else {
+			final List<ActivityManager.RunningAppProcessInfo> processes = am.getRunningAppProcesses();
+			if (processes != null) for (final ActivityManager.RunningAppProcessInfo process : processes)
+				if (process.pid != 0) put(process.uid, process.importance);
+		}
+	}
+
+	private void put(final int uid, final int importance) {
+		if (importance < mImportances.get(uid, NOT_RUNNING)) mImportances.put(uid, importance);		// Keep the most important one among processes of the UID.
+	}
+
+	@VisibleForTesting final long mTime;
+	private final SparseIntArray mImportances = new SparseIntArray();
+
+	private static volatile @Nullable UidImportanceSnapshot sSnapshot;
+	private static final AtomicBoolean sRefreshing = new AtomicBoolean();
+
+	private static final int NOT_RUNNING = Integer.MAX_VALUE;
+	private static final long FRESH_MILLIS = 1_000;
+	private static final long MAX_STALE_MILLIS = 10_000;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2026 Oasis Feng. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oasisfeng.condom.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import androidx.annotation.Keep;
+import androidx.annotation.RestrictTo;
+
+/**
+ * The shared low-priority thread for housekeeping work of condom, started on demand.
+ *
+ * Created by agent on 2026/10/17.
+ */
+@Keep @RestrictTo(RestrictTo.Scope.LIBRARY)
+public class BackgroundThread {
+
+	public static Handler getHandler() { return sHandler.get(); }
+
+	public static void post(final Runnable runnable) { sHandler.get().post(runnable); }
+
+	public static void postDelayed(final Runnable runnable, final long delay_millis) { sHandler.get().postDelayed(runnable, delay_millis); }
+
+	private static final Lazy<Handler> sHandler = new Lazy<Handler>() { @Override protected Handler create() {
+		final HandlerThread thread = new HandlerThread("Condom", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		return new Handler(thread.getLooper());
+	}};
+
+	private BackgroundThread() {}
+}